@@ -0,0 +1,301 @@
+package com.pinealpha.bench;
+
+import com.pinealpha.model.Config;
+import com.pinealpha.util.Helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.opencv.video.Video;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+import org.opencv.videoio.Videoio;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Times each stage of getCarSpeedFromVideo on its own, using synthetic frames generated in setup:
+ * a textured road with a car-sized block moving across it, plus sensor noise.
+ *
+ * mvn clean -Pcomplete,bench package -Dmaven.test.skip
+ * java --enable-preview -cp target/speedcam-0.1-jar-with-dependencies.jar org.openjdk.jmh.Main MotionStageBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MotionStageBenchmark {
+
+    private static final int FRAME_COUNT = 48;
+
+    static {
+        // The scratch Mats below are created with the benchmark instance, before any @Setup runs
+        try {
+            Helper.loadJNIOpenCV();
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"1920x1080", "3840x2160"})
+    public String frameSize;
+
+    @Param({"2", "5"})
+    public int kernelSize;
+
+    @Param({"true", "false"})
+    public boolean detectShadows;
+
+    // bgr is the default pipeline, gray is --gray: luma from the decoder and single-channel MOG2
+    @Param({"bgr", "gray"})
+    public String color;
+
+    private final List<Mat> frames = new ArrayList<>();
+    private final List<Mat> fgMasks = new ArrayList<>();
+    private final List<Mat> maskedMasks = new ArrayList<>();
+    private final List<Mat> closedMasks = new ArrayList<>();
+    private final List<MatOfPoint> carContours = new ArrayList<>();
+    private final List<MatOfPoint> contours = new ArrayList<>();
+
+    private BackgroundSubtractorMOG2 bgSubtractor;
+    private Mat roiMask;
+    private Mat kernel;
+    private final Mat fgMask = new Mat();
+    private final Mat maskedFgMask = new Mat();
+    private final Mat closedMask = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final Mat decoded = new Mat();
+    private final Mat decodedGray = new Mat();
+    private File videoFile;
+    private VideoCapture cap;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String[] dimensions = frameSize.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+
+        generateFrames(width, height);
+        writeVideo(width, height);
+        if (color.equals("gray")) {
+            for (Mat frame : frames) {
+                Imgproc.cvtColor(frame, frame, Imgproc.COLOR_BGR2GRAY);
+            }
+        }
+        System.out.println("\nMOG2 input: " + frames.getFirst().total() * frames.getFirst().elemSize() + " bytes per frame");
+
+        MatOfPoint roadPolygon = new MatOfPoint();
+        roadPolygon.fromList(Config.getRoadPoints(width));
+        roiMask = Mat.zeros(height, width, CvType.CV_8UC1);
+        Imgproc.fillPoly(roiMask, List.of(roadPolygon), new Scalar(255));
+        roadPolygon.release();
+
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(kernelSize, kernelSize));
+        bgSubtractor = newSubtractor();
+
+        // Precompute each stage's input once so every benchmark measures exactly one stage
+        BackgroundSubtractorMOG2 warmup = newSubtractor();
+        for (Mat frame : frames) {
+            Mat fg = new Mat();
+            Mat masked = new Mat();
+            Mat closed = new Mat();
+            warmup.apply(frame, fg);
+            Core.bitwise_and(fg, roiMask, masked);
+            Imgproc.morphologyEx(masked, closed, Imgproc.MORPH_CLOSE, kernel);
+            fgMasks.add(fg);
+            maskedMasks.add(masked);
+            closedMasks.add(closed);
+        }
+        Imgproc.findContours(closedMasks.get(FRAME_COUNT / 2), carContours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+        cap = openCapture();
+    }
+
+    private VideoCapture openCapture() {
+        VideoCapture capture = new VideoCapture(videoFile.getAbsolutePath());
+        if (color.equals("gray")) {
+            capture.set(Videoio.CAP_PROP_CONVERT_RGB, 0);
+        }
+        return capture;
+    }
+
+    private BackgroundSubtractorMOG2 newSubtractor() {
+        BackgroundSubtractorMOG2 subtractor = Video.createBackgroundSubtractorMOG2();
+        subtractor.setDetectShadows(detectShadows);
+        subtractor.setHistory(Config.BG_HISTORY);
+        subtractor.setVarThreshold(Config.BG_VAR_THRESHOLD);
+        return subtractor;
+    }
+
+    private void generateFrames(int width, int height) {
+        Mat road = new Mat(height, width, CvType.CV_8UC3);
+        Core.randu(road, 60, 110);
+        Imgproc.GaussianBlur(road, road, new Size(9, 9), 0);
+
+        // Car-sized block crossing the road band, roughly where Config.getRoadPoints puts the road
+        int carWidth = width / 8;
+        int carHeight = height / 12;
+        int carTop = Math.min(height - carHeight, (int) (height * 0.45));
+        Mat noise = new Mat(height, width, CvType.CV_8UC3);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            Mat frame = road.clone();
+            int carLeft = (int) ((double) i / FRAME_COUNT * (width - carWidth));
+            Imgproc.rectangle(frame, new Point(carLeft, carTop), new Point(carLeft + carWidth, carTop + carHeight), new Scalar(30, 30, 200), -1);
+            Core.randn(noise, 0, 4);
+            Core.add(frame, noise, frame);
+            frames.add(frame);
+        }
+        noise.release();
+        road.release();
+    }
+
+    private void writeVideo(int width, int height) throws IOException {
+        videoFile = Files.createTempFile("speedcam-bench", ".mp4").toFile();
+        videoFile.deleteOnExit();
+        VideoWriter writer = new VideoWriter(videoFile.getAbsolutePath(), VideoWriter.fourcc('a', 'v', 'c', '1'), 30, new Size(width, height), true);
+        if (!writer.isOpened()) {
+            writer = new VideoWriter(videoFile.getAbsolutePath(), VideoWriter.fourcc('m', 'p', '4', 'v'), 30, new Size(width, height), true);
+        }
+        if (!writer.isOpened()) {
+            throw new IllegalStateException("No H.264 or MPEG-4 encoder available to generate the decode benchmark clip");
+        }
+        for (Mat frame : frames) {
+            writer.write(frame);
+        }
+        writer.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cap.release();
+        decoded.release();
+        decodedGray.release();
+        for (List<? extends Mat> mats : List.of(frames, fgMasks, maskedMasks, closedMasks, carContours, contours)) {
+            mats.forEach(Mat::release);
+        }
+        roiMask.release();
+        kernel.release();
+        videoFile.delete();
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % FRAME_COUNT;
+        return next;
+    }
+
+    /**
+     * In gray mode this includes the BGR to gray conversion when the decoder ignores CAP_PROP_CONVERT_RGB,
+     * so both modes measure the cost of getting MOG2's input.
+     */
+    @Benchmark
+    public Mat decode() {
+        if (!cap.read(decoded)) {
+            cap.release();
+            cap = openCapture();
+            cap.read(decoded);
+        }
+        if (color.equals("gray") && decoded.channels() == 3) {
+            Imgproc.cvtColor(decoded, decodedGray, Imgproc.COLOR_BGR2GRAY);
+            return decodedGray;
+        }
+        return decoded;
+    }
+
+    @Benchmark
+    public Mat backgroundSubtract() {
+        bgSubtractor.apply(frames.get(nextIndex()), fgMask);
+        return fgMask;
+    }
+
+    /**
+     * Bytes MOG2 moves per frame, counted by backgroundSubtractBandwidth. JMH reports each as a rate next to the score,
+     * so the bgr and gray runs can be compared in bytes/sec rather than only in time per frame.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Traffic {
+        public long frameBytes;
+        public long maskBytes;
+        public long modelBytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            frameBytes = 0;
+            maskBytes = 0;
+            modelBytes = 0;
+        }
+    }
+
+    /**
+     * Same work as backgroundSubtract, as throughput with the memory it touches. Frame and mask bytes are exact,
+     * model bytes are the Gaussian mixture MOG2 reads and writes back for every pixel: per mixture a weight, a variance
+     * and one mean per channel as floats, plus the mixture count per pixel. These are the sizes, not measured traffic,
+     * add -prof perfnorm for the hardware counters.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Mat backgroundSubtractBandwidth(Traffic traffic) {
+        Mat frame = frames.get(nextIndex());
+        bgSubtractor.apply(frame, fgMask);
+        long pixels = frame.total();
+        traffic.frameBytes += pixels * frame.elemSize();
+        traffic.maskBytes += pixels;
+        traffic.modelBytes += 2 * pixels * (bgSubtractor.getNMixtures() * (2L + frame.channels()) * Float.BYTES + 1);
+        return fgMask;
+    }
+
+    @Benchmark
+    public Mat applyRoiMask() {
+        Core.bitwise_and(fgMasks.get(nextIndex()), roiMask, maskedFgMask);
+        return maskedFgMask;
+    }
+
+    @Benchmark
+    public Mat morphologyClose() {
+        Imgproc.morphologyEx(maskedMasks.get(nextIndex()), closedMask, Imgproc.MORPH_CLOSE, kernel);
+        return closedMask;
+    }
+
+    @Benchmark
+    public int findContours() {
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        Imgproc.findContours(closedMasks.get(nextIndex()), contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        return contours.size();
+    }
+
+    @Benchmark
+    public double contourAreaAndMoments() {
+        double largestArea = 0;
+        MatOfPoint largest = null;
+        for (MatOfPoint contour : carContours) {
+            double area = Imgproc.contourArea(contour);
+            if (area > largestArea) {
+                largestArea = area;
+                largest = contour;
+            }
+        }
+        if (largest == null) {
+            return 0;
+        }
+        Moments moments = Imgproc.moments(largest);
+        return moments.m10 / moments.m00;
+    }
+}
@@ -0,0 +1,120 @@
+package com.pinealpha;
+
+import com.pinealpha.model.Config;
+import com.pinealpha.util.Metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Decodes a clip at full frame rate only while something is moving.
+ *
+ * While the road is idle, only every Nth frame is retrieved and probed (analyzed once, without updating the background
+ * model), the frames in between are skipped with grab(). When a probe finds a car-sized blob, the capture seeks back to the
+ * first skipped frame and analyzes everything from there at full rate, at least through the probe, so firstMotionFrame and
+ * lastMotionFrame are exact. A model that has drifted from the light shows up as a blob in a probe too, and the full rate
+ * stretch that follows brings it up to date. Skipped frames count as no motion, but not toward the tracker's early
+ * noise ratio. Decoding stops as soon as the tracker is done.
+ */
+public class AdaptiveStride {
+
+    /**
+     * Returns the number of frames accounted for, analyzed or skipped.
+     */
+    public static int run(VideoCapture cap, FrameAnalyzer analyzer, MotionTracker tracker, int stride,
+                          FramePipeline.FrameHandler fullRate) throws IOException {
+        // Let MOG2 build its background at full rate before skipping anything
+        final int warmupFrames = Config.INITIAL_FRAME_SKIP + Config.BG_HISTORY;
+
+        Mat frame = new Mat();
+        int nextFrame = 0; // index of the next frame cap will return
+        int analyzedThrough = -1; // every frame up to here has been fed to the tracker
+        int fullRateThrough = -1; // the probe that triggered the last seek back, no striding again before it
+        int idleFrames = 0;
+        boolean striding = false;
+
+        try {
+            while (!tracker.isDone()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Processing interrupted at frame " + nextFrame);
+                }
+
+                if (!striding) {
+                    if (!read(cap, frame)) {
+                        break;
+                    }
+                    int frameIndex = nextFrame++;
+                    fullRate.handle(frame, frameIndex);
+                    analyzedThrough = frameIndex;
+
+                    idleFrames = tracker.isIdle() ? idleFrames + 1 : 0;
+                    striding = frameIndex >= warmupFrames && frameIndex > fullRateThrough && idleFrames >= Config.STRIDE_IDLE_FRAMES;
+                    continue;
+                }
+
+                // Skip ahead to the next probe frame without converting the frames in between
+                boolean endOfStream = false;
+                long start = System.nanoTime();
+                for (int i = 0; i < stride - 1 && !endOfStream; i++) {
+                    if (cap.grab()) {
+                        nextFrame++;
+                    } else {
+                        endOfStream = true;
+                    }
+                }
+                Metrics.record(Metrics.Stage.DECODE, start);
+                if (endOfStream || !read(cap, frame)) {
+                    // Nothing moved at the last probe, so the trailing frames count as idle
+                    skip(tracker, analyzedThrough + 1, nextFrame - 1);
+                    analyzedThrough = nextFrame - 1;
+                    break;
+                }
+                int probeIndex = nextFrame++;
+
+                // A probe that saw a car must not be in the model when the skipped frames before it are analyzed
+                analyzer.analyze(frame, tracker.areaThreshold(), 0);
+                if (analyzer.significantContours() > 0) {
+                    // Something car-sized showed up, go back and analyze the skipped frames at full rate
+                    if (cap.set(Videoio.CAP_PROP_POS_FRAMES, analyzedThrough + 1)) {
+                        nextFrame = analyzedThrough + 1;
+                        fullRateThrough = probeIndex;
+                    } else {
+                        // Backend can't seek, continue from the probe and accept a first frame that may be a few frames late
+                        System.out.println("Seek not supported, motion start may be off by up to " + (stride - 1) + " frames");
+                        skip(tracker, analyzedThrough + 1, probeIndex - 1);
+                        tracker.update(probeIndex, analyzer.motionPercentage(), analyzer.largestContourArea(), analyzer.largestCentroidX());
+                        analyzedThrough = probeIndex;
+                    }
+                    striding = false;
+                    idleFrames = 0;
+                } else {
+                    skip(tracker, analyzedThrough + 1, probeIndex - 1);
+                    tracker.update(probeIndex, analyzer.motionPercentage(), analyzer.largestContourArea(), analyzer.largestCentroidX());
+                    analyzedThrough = probeIndex;
+                }
+            }
+        } finally {
+            frame.release();
+            // Each frame once, whether it was analyzed, probed, stepped over or read again after a seek back
+            Metrics.countFrames(analyzedThrough + 1);
+        }
+        return analyzedThrough + 1;
+    }
+
+    private static boolean read(VideoCapture cap, Mat frame) {
+        long start = System.nanoTime();
+        boolean read = cap.read(frame);
+        Metrics.record(Metrics.Stage.DECODE, start);
+        return read && !frame.empty();
+    }
+
+    private static void skip(MotionTracker tracker, int fromFrame, int toFrame) {
+        for (int frameIndex = fromFrame; frameIndex <= toFrame; frameIndex++) {
+            tracker.skip(frameIndex);
+        }
+    }
+}
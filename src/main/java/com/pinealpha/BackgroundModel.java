@@ -0,0 +1,31 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+
+import org.opencv.core.Mat;
+
+/**
+ * Per-pixel background model that turns each frame into a foreground mask, 255 where something moved.
+ * FrameAnalyzer owns one per video.
+ */
+public interface BackgroundModel {
+
+    /**
+     * A learningRate of 0 leaves the model unchanged, -1 derives the rate from the history length.
+     */
+    void apply(Mat frame, Mat fgMask, double learningRate);
+
+    /**
+     * True if apply only accepts single-channel frames.
+     */
+    boolean lumaOnly();
+
+    void release();
+
+    static BackgroundModel create(BackgroundEngine engine, AnalysisParameters parameters) {
+        return switch (engine) {
+            case MOG2 -> new Mog2BackgroundModel(parameters);
+            case VECTOR -> new VectorBackgroundModel(parameters);
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Metrics;
+import com.pinealpha.util.ResultSink;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.Core;
+
+/**
+ * Processes a batch of videos on a fixed pool of worker threads.
+ * Each worker runs getCarSpeedFromVideo, so it owns its own VideoCapture, MOG2 subtractor and scratch Mats.
+ */
+public class BatchProcessor {
+
+    /**
+     * Results and failures both in input order. Failed videos aren't submitted to the sink, so the index doesn't mark them done.
+     */
+    public record Results(Map<String, MotionResult> results, Map<String, Throwable> failures) {
+    }
+
+    public static Results process(List<String> videoPaths, Args args, ResultSink sink) throws InterruptedException {
+        int workers = Math.min(args.workers(), videoPaths.size());
+        int cpus = Runtime.getRuntime().availableProcessors();
+
+        // OpenCV parallelizes some kernels internally, so split the cores between it and the Java workers
+        int previousCvThreads = Core.getNumThreads();
+        Core.setNumThreads(Math.max(1, cpus / workers));
+        System.out.println("Processing " + videoPaths.size() + " videos with " + workers + " workers ("
+                + Core.getNumThreads() + " OpenCV threads each)");
+
+        Map<String, Future<MotionResult>> futures = new HashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        try {
+            // Longest clips first so a big file doesn't start last and leave the other workers idle
+            for (String path : longestFirst(videoPaths)) {
+                futures.put(path, pool.submit(() -> processWithTimeout(path, args, sink, watchdog)));
+            }
+
+            // Collect in the original order so results line up with the sequential mode
+            Map<String, MotionResult> results = new LinkedHashMap<>();
+            Map<String, Throwable> failures = new LinkedHashMap<>();
+            for (String path : videoPaths) {
+                try {
+                    results.put(path, futures.get(path).get());
+                } catch (ExecutionException e) {
+                    System.err.println("Error processing " + path + ": " + e.getCause().getMessage());
+                    failures.put(path, e.getCause());
+                }
+            }
+            return new Results(results, failures);
+        } finally {
+            pool.shutdownNow();
+            watchdog.shutdownNow();
+            Core.setNumThreads(previousCvThreads);
+        }
+    }
+
+    static MotionResult processWithTimeout(String path, Args args, ResultSink sink, ScheduledExecutorService watchdog) throws Exception {
+        // getCarSpeedFromVideo checks the interrupt flag once per frame. Whichever of the worker and the watchdog
+        // sets finished first decides the outcome, so the watchdog can't interrupt the worker after it has moved on.
+        Thread worker = Thread.currentThread();
+        AtomicBoolean finished = new AtomicBoolean();
+        ScheduledFuture<?> timer = watchdog.schedule(() -> {
+            if (finished.compareAndSet(false, true)) {
+                worker.interrupt();
+            }
+        }, args.videoTimeoutSeconds(), TimeUnit.SECONDS);
+        MotionResult result;
+        try {
+            System.out.println("\nProcessing: " + path);
+            result = SpeedDetect.getCarSpeedFromVideo(path, args);
+        } catch (InterruptedIOException e) {
+            if (finished.get()) {
+                TimeoutException timeout = new TimeoutException("Timed out after " + args.videoTimeoutSeconds() + " seconds");
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw e;
+        } finally {
+            if (finished.compareAndSet(false, true)) {
+                // Any interrupt still set came from someone else, e.g. the pool shutting down, so it stays
+                timer.cancel(false);
+            } else {
+                // The watchdog won and is about to interrupt, if it hasn't already. Wait for that so the clear below
+                // can't run before it and leave the worker interrupted for its next video.
+                while (!timer.isDone()) {
+                    Thread.onSpinWait();
+                }
+                Thread.interrupted();
+            }
+        }
+        result.printMotionResults();
+        sink.submit(result, path);
+        Metrics.countVideo();
+        return result;
+    }
+
+    private static List<String> longestFirst(List<String> videoPaths) {
+        // File size is a cheap stand-in for clip duration, no need to open every container up front
+        List<String> sorted = new ArrayList<>(videoPaths);
+        sorted.sort(Comparator.comparingLong((String path) -> new File(path).length()).reversed());
+        return sorted;
+    }
+}
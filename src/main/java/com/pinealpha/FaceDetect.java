@@ -1,6 +1,7 @@
 package com.pinealpha;
 
 import com.pinealpha.util.Helper;
+import com.pinealpha.util.MatSegments;
 
 import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
@@ -65,6 +66,36 @@ public class FaceDetect {
         }
     }
 
+    /**
+     * Same as faceDetectPanama, but on pixels already in a Mat: the native side works on the Mat's memory directly
+     * and draws the rectangles into it, so no image files are written or read. Needs both loadJNIOpenCV and
+     * loadNativeOpenCV. Returns the number of faces found.
+     */
+    public static int faceDetectPanama(Mat image, String cascadeResource) throws IOException, Throwable {
+        if (image.type() != CvType.CV_8UC3) {
+            throw new IllegalArgumentException("Expected a BGR image, got " + image);
+        }
+        var cascadePath = Helper.extractResource(cascadeResource).getAbsolutePath();
+
+        try (Arena arena = Arena.ofConfined()) {
+            SymbolLookup lookup = SymbolLookup.loaderLookup();
+            Linker linker = Linker.nativeLinker();
+
+            MethodHandle faceDetect = linker.downcallHandle(
+                    lookup.find("face_detect_pixels").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT,
+                            ValueLayout.JAVA_LONG, ValueLayout.ADDRESS)
+            );
+
+            int faces = (int) faceDetect.invoke(MatSegments.of(image), image.rows(), image.cols(), MatSegments.rowStride(image),
+                    arena.allocateFrom(cascadePath));
+            if (faces < 0) {
+                throw new IOException("Could not load cascade " + cascadeResource);
+            }
+            return faces;
+        }
+    }
+
     public void testPanama() throws IOException, Throwable {
         System.out.println("------ Panama ------");
 
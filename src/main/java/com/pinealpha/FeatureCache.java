@@ -0,0 +1,246 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Per-frame motion features saved next to a video (clip.mp4.features), so the tracker can be re-run with other
+ * thresholds without decoding the clip again.
+ *
+ * The tracker feeds its current area threshold back into analysis, so instead of stats at one threshold the file
+ * keeps, per frame, the largest blob's area and centroid plus every blob area above FEATURE_MIN_AREA, sorted
+ * largest first. Any area threshold at or above FEATURE_MIN_AREA can then be replayed exactly.
+ *
+ * Layout, big-endian and columnar so a reader maps it once and indexes straight into it:
+ *   header: magic, version, analysis fingerprint, fps, width, height, totalFrames, frame count N, area count M
+ *   double[N] largest blob area, double[N] largest blob centroid x, int[N+1] area offsets, double[M] areas
+ */
+public class FeatureCache {
+
+    private static final int MAGIC = 0x53504446; // "SPDF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 4;
+
+    public static Path pathFor(String videoPath) {
+        return Path.of(videoPath + Config.FEATURE_FILE_SUFFIX);
+    }
+
+    /**
+     * Hash of everything that changes the features themselves. Tracker thresholds are left out on purpose.
+     */
+    public static long fingerprint(Args args) {
+        String parameters = String.join("\n",
+                "bgDetectShadows=" + Config.BG_DETECT_SHADOWS,
+                "bgHistory=" + Config.BG_HISTORY,
+                "bgVarThreshold=" + Config.BG_VAR_THRESHOLD,
+                "kernelSize=" + Config.KERNEL_SIZE,
+                "featureMinArea=" + Config.FEATURE_MIN_AREA,
+                "roadPoints=" + Config.getRoadPoints(3840),
+                "scale=" + args.scale(),
+                "roiCrop=" + args.roiCrop(),
+                "grayscale=" + args.grayscale(),
+                "backgroundEngine=" + args.backgroundEngine(),
+                "components=" + args.components());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(parameters.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * True if the video has a feature file saved with the same analysis settings since the clip last changed.
+     */
+    public static boolean isCurrent(String videoPath, Args args) {
+        Path file = pathFor(videoPath);
+        try {
+            if (!Files.exists(file) || Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(Path.of(videoPath))) < 0) {
+                return false;
+            }
+            return new Reader(file).fingerprint() == fingerprint(args);
+        } catch (IOException e) {
+            // Unreadable or from another version, save it again
+            return false;
+        }
+    }
+
+    /**
+     * Collects one entry per analyzed frame, in order, and writes the file when the clip is done.
+     */
+    public static class Writer {
+        private final VideoInfo video;
+        private final long fingerprint;
+        private double[] largestArea = new double[1024];
+        private double[] largestCentroidX = new double[1024];
+        private int[] areaOffsets = new int[1025];
+        private double[] areas = new double[4096];
+        private double[] frameAreas = new double[64];
+        private int frames = 0;
+
+        public Writer(VideoInfo video, Args args) {
+            this.video = video;
+            this.fingerprint = fingerprint(args);
+        }
+
+        public void record(FrameAnalyzer analyzer) {
+            if (frames == largestArea.length) {
+                largestArea = Arrays.copyOf(largestArea, frames * 2);
+                largestCentroidX = Arrays.copyOf(largestCentroidX, frames * 2);
+                areaOffsets = Arrays.copyOf(areaOffsets, frames * 2 + 1);
+            }
+
+            int blobCount = analyzer.blobCount();
+            if (frameAreas.length < blobCount) {
+                frameAreas = new double[Math.max(blobCount, frameAreas.length * 2)];
+            }
+            int largest = -1;
+            int kept = 0;
+            for (int i = 0; i < blobCount; i++) {
+                double area = analyzer.blobArea(i);
+                if (largest == -1 || area > analyzer.blobArea(largest)) {
+                    largest = i;
+                }
+                if (area > Config.FEATURE_MIN_AREA) {
+                    frameAreas[kept++] = area;
+                }
+            }
+            largestArea[frames] = largest != -1 ? analyzer.blobArea(largest) : 0;
+            largestCentroidX[frames] = largest != -1 ? analyzer.blobCentroidX(largest) : -1;
+
+            int start = areaOffsets[frames];
+            if (areas.length < start + kept) {
+                areas = Arrays.copyOf(areas, Math.max(start + kept, areas.length * 2));
+            }
+            // Largest first, so a replay can stop at the first area under its threshold
+            Arrays.sort(frameAreas, 0, kept);
+            for (int i = 0; i < kept; i++) {
+                areas[start + i] = frameAreas[kept - 1 - i];
+            }
+            areaOffsets[frames + 1] = start + kept;
+            frames++;
+        }
+
+        public void write(Path file) throws IOException {
+            ByteBuffer buffer = toBuffer();
+
+            // Write then rename, so a crash never leaves a truncated file that looks valid
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * The file contents, for replaying in memory without writing them out.
+         */
+        public ByteBuffer toBuffer() {
+            int areaCount = areaOffsets[frames];
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + frames * 16 + (frames + 1) * 4 + areaCount * 8);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint)
+                    .putDouble(video.fps()).putInt(video.frameWidth()).putInt(video.frameHeight()).putInt(video.totalFrames())
+                    .putInt(frames).putInt(areaCount);
+            buffer.asDoubleBuffer().put(largestArea, 0, frames);
+            buffer.position(buffer.position() + frames * 8);
+            buffer.asDoubleBuffer().put(largestCentroidX, 0, frames);
+            buffer.position(buffer.position() + frames * 8);
+            buffer.asIntBuffer().put(areaOffsets, 0, frames + 1);
+            buffer.position(buffer.position() + (frames + 1) * 4);
+            buffer.asDoubleBuffer().put(areas, 0, areaCount);
+            return buffer.position(buffer.limit()).flip();
+        }
+    }
+
+    /**
+     * Read-only view over a mapped feature file, or the buffer of a Writer.
+     */
+    public static class Reader {
+        private final ByteBuffer buffer;
+        private final long fingerprint;
+        private final VideoInfo video;
+        private final int frames;
+        private final int largestAreaStart;
+        private final int largestCentroidXStart;
+        private final int areaOffsetsStart;
+        private final int areasStart;
+
+        public Reader(Path file) throws IOException {
+            this(map(file), file.toString());
+        }
+
+        public Reader(ByteBuffer buffer, String source) throws IOException {
+            this.buffer = buffer;
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a version " + VERSION + " feature file: " + source);
+            }
+            fingerprint = buffer.getLong(8);
+            video = new VideoInfo(buffer.getDouble(16), buffer.getInt(24), buffer.getInt(28), buffer.getInt(32));
+            frames = buffer.getInt(36);
+            int areaCount = buffer.getInt(40);
+
+            largestAreaStart = HEADER_BYTES;
+            largestCentroidXStart = largestAreaStart + frames * 8;
+            areaOffsetsStart = largestCentroidXStart + frames * 8;
+            areasStart = areaOffsetsStart + (frames + 1) * 4;
+            if (buffer.limit() != areasStart + areaCount * 8) {
+                throw new IOException("Feature file has the wrong size: " + source);
+            }
+        }
+
+        private static MappedByteBuffer map(Path file) throws IOException {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            }
+        }
+
+        public long fingerprint() {
+            return fingerprint;
+        }
+
+        public VideoInfo video() {
+            return video;
+        }
+
+        public int frames() {
+            return frames;
+        }
+
+        public double largestArea(int frame) {
+            return buffer.getDouble(largestAreaStart + frame * 8);
+        }
+
+        public double largestCentroidX(int frame) {
+            return buffer.getDouble(largestCentroidXStart + frame * 8);
+        }
+
+        public int areaStart(int frame) {
+            return buffer.getInt(areaOffsetsStart + frame * 4);
+        }
+
+        public int areaEnd(int frame) {
+            return buffer.getInt(areaOffsetsStart + (frame + 1) * 4);
+        }
+
+        /**
+         * Area i of the flat, per-frame sorted area column, between areaStart(frame) and areaEnd(frame).
+         */
+        public double area(int i) {
+            return buffer.getDouble(areasStart + i * 8);
+        }
+    }
+}
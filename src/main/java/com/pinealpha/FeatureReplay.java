@@ -0,0 +1,131 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Helper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Re-runs the motion tracker over feature files saved with --save-features, without opening the videos.
+ * Tracker thresholds can be overridden on the command line by their TrackerThresholds name, e.g. defaultAreaThreshold=1500.
+ * Background subtractor, kernel and ROI settings are baked into the features; files saved with other values are skipped.
+ *
+ * java --enable-preview -cp target/speedcam-0.1-jar-with-dependencies.jar com.pinealpha.FeatureReplay --in <video_or_directory> [--scale <factor>] [--roi-crop] [--gray] [--bg mog2|vector] [--components] [name=value ...]
+ */
+public class FeatureReplay {
+
+    private static final String USAGE = "Usage: FeatureReplay --in <video_or_directory> [--scale <factor>] [--roi-crop] [--gray] [--bg mog2|vector] [--components] [name=value ...]";
+
+    public static void main(String[] args) throws IOException {
+        String videoPath = null;
+        double scale = 1.0;
+        boolean roiCrop = false;
+        boolean grayscale = false;
+        BackgroundEngine backgroundEngine = BackgroundEngine.MOG2;
+        boolean components = false;
+        Map<String, String> overrides = new LinkedHashMap<>();
+        TrackerThresholds thresholds = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--in" -> videoPath = Helper.parseValue(args, ++i, "--in");
+                    case "--scale" -> scale = Helper.parseScale(args, ++i);
+                    case "--roi-crop" -> roiCrop = true;
+                    case "--gray" -> grayscale = true;
+                    case "--bg" -> backgroundEngine = Helper.parseEnum(BackgroundEngine.class, args, ++i, "--bg");
+                    case "--components" -> components = true;
+                    default -> {
+                        int equals = args[i].indexOf('=');
+                        if (equals <= 0) {
+                            throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                        }
+                        overrides.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+                    }
+                }
+            }
+            if (videoPath == null) {
+                throw new IllegalArgumentException("--in is required");
+            }
+            thresholds = TrackerThresholds.DEFAULT.with(overrides);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        // Only the options that change the features matter here, the rest are defaults
+        Args analysis = Args.builder(videoPath).roiCrop(roiCrop).scale(scale).grayscale(grayscale)
+                .backgroundEngine(backgroundEngine).components(components).build();
+        long fingerprint = FeatureCache.fingerprint(analysis);
+
+        long start = System.nanoTime();
+        int replayed = 0;
+        long frames = 0;
+        for (String path : Helper.getVideoPaths(videoPath)) {
+            Path featurePath = FeatureCache.pathFor(path);
+            if (!Files.exists(featurePath)) {
+                System.out.println("No features for " + path + ", run with --save-features first");
+                continue;
+            }
+            FeatureCache.Reader features = new FeatureCache.Reader(featurePath);
+            if (features.fingerprint() != fingerprint) {
+                System.out.println("Skipping " + featurePath + ": saved with other analysis settings");
+                continue;
+            }
+
+            System.out.println("\nReplaying: " + path);
+            replay(features, Paths.get(path).getFileName().toString(), thresholds).printMotionResults();
+            replayed++;
+            frames += features.frames();
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("\nReplayed " + replayed + " videos, " + frames + " frames in " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Same result as processing the video sequentially with these thresholds, as long as every area threshold
+     * the tracker can switch to is at least FEATURE_MIN_AREA.
+     */
+    public static MotionResult replay(FeatureCache.Reader features, String fileName, TrackerThresholds thresholds) {
+        for (double areaThreshold : thresholds.areaThresholds()) {
+            if (areaThreshold < Config.FEATURE_MIN_AREA) {
+                throw new IllegalArgumentException("Area threshold " + areaThreshold + " is below the saved minimum of " + Config.FEATURE_MIN_AREA);
+            }
+        }
+
+        VideoInfo video = features.video();
+        MotionTracker tracker = new MotionTracker(fileName, video, thresholds, false);
+        double frameArea = (double) video.frameWidth() * video.frameHeight();
+
+        int frameCount = 0;
+        for (; frameCount < features.frames(); frameCount++) {
+            double areaThreshold = tracker.areaThreshold();
+
+            // Areas are stored largest first, so the ones above the threshold are a prefix
+            double totalMotionArea = 0;
+            int significantContours = 0;
+            for (int i = features.areaStart(frameCount); i < features.areaEnd(frameCount); i++) {
+                double area = features.area(i);
+                if (area <= areaThreshold) {
+                    break;
+                }
+                totalMotionArea += area;
+                significantContours++;
+            }
+
+            double motionPercentage = totalMotionArea * 100.0 / frameArea;
+            double largestContourArea = significantContours > 0 ? features.largestArea(frameCount) : 0;
+            double largestCentroidX = significantContours > 0 ? features.largestCentroidX(frameCount) : -1;
+            tracker.update(frameCount, motionPercentage, largestContourArea, largestCentroidX);
+            if (tracker.isRejected()) {
+                break;
+            }
+        }
+        return tracker.toResult(Helper.parseDateTimeFromFilename(fileName), frameCount);
+    }
+}
@@ -0,0 +1,497 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Helper;
+import com.pinealpha.util.Metrics;
+import com.pinealpha.util.Metrics.Stage;
+
+import java.util.*;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Per-video motion analysis: background subtraction, ROI mask, morphology and contour stats for one frame at a time.
+ * Owns the background model and its Mats, so each video (and each worker) needs its own instance.
+ *
+ * Blobs are contours from findContours by default. With --components they are connected components from a single
+ * connectedComponentsWithStats pass instead, which reports each blob's pixel area, bounding box and centroid
+ * straight into three Mats, with no polygon per blob.
+ *
+ * Contours live in analysis coordinates (the full frame multiplied by the --scale factor), but every
+ * area and centroid reported back is converted to full resolution so the Config thresholds still apply.
+ * With --gray, MOG2 models a single luma channel instead of three, a third of the pixel data per frame.
+ *
+ * With --track, while the tracker is following a car, masking, morphology and blob extraction only run on the
+ * SearchWindow strip around where the car is predicted to be. Background subtraction still sees the whole region so
+ * the model stays current everywhere, and motionPercentage only counts blobs inside the strip.
+ */
+public class FrameAnalyzer {
+
+    private static final int STAT_COLUMNS = 5; // connectedComponentsWithStats: left, top, width, height, area
+
+    private final VideoInfo video;
+    private final MatOfPoint roadPolygon; // in analysis coordinates
+    private final List<MatOfPoint> polygons;
+    private final Mat roiMask;
+    private final Rect roi; // null when the full frame is analyzed
+    private final Rect analyzed; // roi, or the full frame
+    private final boolean grayscale;
+    private final boolean components;
+    private final Point roiOffset;
+    private final double scale;
+    private final double areaScale;
+    private final Size analysisSize;
+    private final BackgroundModel backgroundModel;
+    private final Mat kernel;
+    private final SearchWindow searchWindow; // null without --track
+
+    // Per-video scratch, reused for every frame so the steady-state loop doesn't allocate
+    private final Mat scaledFrame = new Mat();
+    private final Mat grayFrame = new Mat();
+    private final Mat fgMask = new Mat();
+    private final Mat maskedFgMask = new Mat();
+    private final Mat windowMask = new Mat();
+    private final Mat hierarchy = new Mat();
+    private final List<MatOfPoint> contours = new ArrayList<>();
+    private final Mat labels = new Mat();
+    private final Mat stats = new Mat();
+    private final Mat centroids = new Mat();
+    private int[] componentStats = new int[64 * STAT_COLUMNS];
+    private double[] componentCentroids = new double[64 * 2];
+    private int blobCount;
+    private double[] blobAreas = new double[64];
+    private int[] contourPoints = new int[512];
+    private final Mat[] roiViewSources = new Mat[Config.PIPELINE_RING_SIZE + 1];
+    private final Mat[] roiViews = new Mat[Config.PIPELINE_RING_SIZE + 1];
+    private final long[] roiViewData = new long[Config.PIPELINE_RING_SIZE + 1];
+    private int nextRoiView = 0;
+    private final Mat[] fgWindowViews; // per SearchWindow slot, null without --track
+    private final Mat[] roiWindowViews;
+    private long fgWindowViewData; // fgMask's buffer when fgWindowViews were made
+
+    // Results of the last analyzed frame, contours are kept until the next call for debug output
+    private double scaledAreaThreshold;
+    private int significantContours;
+    private double motionPercentage;
+    private double largestContourArea;
+    private double largestCentroidX;
+    private Rect window; // the SearchWindow strip of the last frame, null if the whole region was analyzed
+    private final Point blobOffset = new Point(); // from the blob Mat's coordinates to analysis coordinates
+
+    public FrameAnalyzer(VideoInfo video, Args args) {
+        this(video, args, AnalysisParameters.DEFAULT);
+    }
+
+    public FrameAnalyzer(VideoInfo video, Args args, AnalysisParameters parameters) {
+        this.video = video;
+
+        scale = args.scale();
+        areaScale = scale * scale;
+        components = args.components();
+
+        List<Point> roadPoints = Config.getRoadPoints(video.frameWidth());
+
+        // Only the road polygon's bounding box goes through the pipeline when cropping
+        MatOfPoint fullResPolygon = new MatOfPoint();
+        fullResPolygon.fromList(roadPoints);
+        roi = args.roiCrop() ? clippedBoundingRect(fullResPolygon, video.frameWidth(), video.frameHeight()) : null;
+        fullResPolygon.release();
+
+        analyzed = roi != null ? roi : new Rect(0, 0, video.frameWidth(), video.frameHeight());
+        analysisSize = new Size(Math.round(analyzed.width * scale), Math.round(analyzed.height * scale));
+        roiOffset = new Point(Math.round(analyzed.x * scale), Math.round(analyzed.y * scale));
+
+        roadPolygon = new MatOfPoint();
+        roadPolygon.fromList(roadPoints.stream().map(p -> new Point(p.x * scale, p.y * scale)).toList());
+        polygons = Arrays.asList(roadPolygon);
+
+        // The mask covers exactly what is analyzed, shifted to match the crop
+        roiMask = Mat.zeros(analysisSize, CvType.CV_8UC1);
+        Imgproc.fillPoly(roiMask, polygons, new Scalar(255), Imgproc.LINE_8, 0, new Point(-roiOffset.x, -roiOffset.y));
+
+        // Create background model for motion detection
+        backgroundModel = BackgroundModel.create(args.backgroundEngine(), parameters);
+        grayscale = args.grayscale() || backgroundModel.lumaOnly();
+
+        int kernelSize = Math.max(1, (int) Math.round(parameters.kernelSize() * scale));
+        kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(kernelSize, kernelSize));
+
+        // Saved features have to describe the whole region, whatever the tracker was doing
+        searchWindow = args.track() && !args.saveFeatures()
+                ? new SearchWindow((int) analysisSize.width, (int) analysisSize.height) : null;
+        fgWindowViews = searchWindow != null ? new Mat[searchWindow.slots()] : null;
+        roiWindowViews = searchWindow != null ? new Mat[searchWindow.slots()] : null;
+    }
+
+    /**
+     * With --track, whether the next frames should only be searched around the car. No effect otherwise.
+     */
+    public void follow(boolean following) {
+        if (searchWindow != null) {
+            searchWindow.follow(following);
+        }
+    }
+
+    public void analyze(Mat frame, double areaThreshold) {
+        analyze(frame, areaThreshold, -1);
+    }
+
+    /**
+     * A learningRate of 0 analyzes the frame without updating the background model, -1 lets MOG2 pick the rate from its history.
+     */
+    public void analyze(Mat frame, double areaThreshold, double learningRate) {
+        releaseContours();
+
+        long t = System.nanoTime();
+        subtractBackground(frame, learningRate);
+        t = Metrics.record(Stage.BG_SUBTRACT, t);
+
+        // Apply ROI mask to motion mask, within the search window when following a car
+        window = searchWindow != null ? searchWindow.next() : null;
+        Mat blobMask;
+        if (window != null) {
+            // The strip is a fixed size, so windowMask is only allocated once
+            int slot = searchWindow.slot();
+            windowViews(slot);
+            Core.bitwise_and(fgWindowViews[slot], roiWindowViews[slot], windowMask);
+            blobMask = windowMask;
+            blobOffset.x = roiOffset.x + window.x;
+            blobOffset.y = roiOffset.y + window.y;
+        } else {
+            Core.bitwise_and(fgMask, roiMask, maskedFgMask);
+            blobMask = maskedFgMask;
+            blobOffset.x = roiOffset.x;
+            blobOffset.y = roiOffset.y;
+        }
+        t = Metrics.record(Stage.MASK, t);
+
+        // Remove noise with morphological operations
+        // Use MORPH_CLOSE to connect nearby regions
+        Imgproc.morphologyEx(blobMask, blobMask, Imgproc.MORPH_CLOSE, kernel);
+        t = Metrics.record(Stage.MORPHOLOGY, t);
+
+        if (components) {
+            labelComponents(blobMask);
+        } else {
+            findContours(blobMask);
+        }
+
+        // Filter blobs by size (look for car-sized objects)
+        scaledAreaThreshold = areaThreshold * areaScale;
+        significantContours = 0;
+        double totalMotionArea = 0;
+        int largest = -1;
+
+        for (int i = 0; i < blobCount; i++) {
+            double area = blobAreas[i];
+            if (area > scaledAreaThreshold) {
+                significantContours++;
+                totalMotionArea += area;
+                if (largest == -1 || area > blobAreas[largest]) {
+                    largest = i;
+                }
+            }
+        }
+
+        largestContourArea = largest != -1 ? blobAreas[largest] / areaScale : 0;
+
+        // Always relative to the full frame so the Config thresholds mean the same thing with or without cropping
+        motionPercentage = (totalMotionArea / areaScale * 100.0) / (video.frameWidth() * video.frameHeight());
+
+        // Calculate centroid of largest blob to determine position
+        largestCentroidX = largest != -1 ? blobCentroidX(largest) : -1;
+        if (searchWindow != null) {
+            searchWindow.observe(largest != -1 ? largestCentroidX * scale - roiOffset.x : Double.NaN);
+        }
+        Metrics.record(Stage.CONTOURS, t);
+    }
+
+    /**
+     * Find contours of moving objects in masked area, offset back into full frame coordinates, measuring each once.
+     * The Java binding allocates a list and one MatOfPoint per contour on every call, so an empty mask skips it.
+     * --components has no per-frame allocation.
+     */
+    private void findContours(Mat mask) {
+        if (Core.countNonZero(mask) == 0) {
+            blobCount = 0;
+            return;
+        }
+        Imgproc.findContours(mask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE, blobOffset);
+        blobCount = contours.size();
+        ensureBlobCapacity();
+        for (int i = 0; i < blobCount; i++) {
+            blobAreas[i] = Imgproc.contourArea(contours.get(i));
+        }
+    }
+
+    /**
+     * Label 8-connected components in one pass and copy their stats and centroids out with one call each.
+     * Label 0 is the background, so blob i is label i + 1.
+     */
+    private void labelComponents(Mat mask) {
+        blobCount = Imgproc.connectedComponentsWithStats(mask, labels, stats, centroids, 8, CvType.CV_32S) - 1;
+        ensureBlobCapacity();
+        int labelCount = blobCount + 1;
+        if (componentStats.length < labelCount * STAT_COLUMNS) {
+            componentStats = new int[Math.max(labelCount, componentStats.length / STAT_COLUMNS * 2) * STAT_COLUMNS];
+            componentCentroids = new double[componentStats.length / STAT_COLUMNS * 2];
+        }
+        stats.get(0, 0, componentStats);
+        centroids.get(0, 0, componentCentroids);
+        for (int i = 0; i < blobCount; i++) {
+            blobAreas[i] = componentStats[(i + 1) * STAT_COLUMNS + Imgproc.CC_STAT_AREA];
+        }
+    }
+
+    private void ensureBlobCapacity() {
+        if (blobAreas.length < blobCount) {
+            blobAreas = new double[Math.max(blobCount, blobAreas.length * 2)];
+        }
+    }
+
+    /**
+     * Same result as moments.m10 / moments.m00 for a contour, computed from its points in Java so no Moments object
+     * is allocated. Returns NaN for a zero-area contour.
+     */
+    private double polygonCentroidX(MatOfPoint contour) {
+        int length = (int) contour.total() * 2;
+        if (length == 0) {
+            return Double.NaN;
+        }
+        if (contourPoints.length < length) {
+            contourPoints = new int[Math.max(length, contourPoints.length * 2)];
+        }
+        contour.get(0, 0, contourPoints);
+
+        // Green's theorem over the closed polygon, as in OpenCV's contour moments
+        double a00 = 0;
+        double a10 = 0;
+        int prevX = contourPoints[length - 2];
+        int prevY = contourPoints[length - 1];
+        for (int i = 0; i < length; i += 2) {
+            int x = contourPoints[i];
+            int y = contourPoints[i + 1];
+            double cross = (double) prevX * y - (double) x * prevY;
+            a00 += cross;
+            a10 += cross * (prevX + x);
+            prevX = x;
+            prevY = y;
+        }
+        return a00 != 0 ? a10 / (3.0 * a00) : Double.NaN;
+    }
+
+    private void subtractBackground(Mat frame, double learningRate) {
+        // Apply background subtraction to the full frame, or just the road's bounding box when cropping.
+        // A raw planar YUV frame is taller than the video, its first rows are the luma plane.
+        Mat input = roi != null || frame.rows() > video.frameHeight() ? roiView(frame) : frame;
+        if (grayscale && input.channels() != 1) {
+            // The decoder ignored CAP_PROP_CONVERT_RGB, convert just the analyzed region
+            Imgproc.cvtColor(input, grayFrame, Imgproc.COLOR_BGR2GRAY);
+            input = grayFrame;
+        }
+        if (scale < 1.0) {
+            Imgproc.resize(input, scaledFrame, analysisSize, 0, 0, Imgproc.INTER_AREA);
+            backgroundModel.apply(scaledFrame, fgMask, learningRate);
+        } else {
+            backgroundModel.apply(input, fgMask, learningRate);
+        }
+    }
+
+    /**
+     * Views of fgMask and roiMask for the strip at this slot, made the first time the strip lands there. fgMask keeps its
+     * buffer from frame to frame, should it ever get a new one the views of the old one are dropped.
+     */
+    private void windowViews(int slot) {
+        long data = fgMask.dataAddr();
+        if (data != fgWindowViewData) {
+            releaseWindowViews();
+            fgWindowViewData = data;
+        }
+        if (fgWindowViews[slot] == null) {
+            fgWindowViews[slot] = fgMask.submat(window);
+            roiWindowViews[slot] = roiMask.submat(window);
+        }
+    }
+
+    private void releaseWindowViews() {
+        if (fgWindowViews == null) {
+            return;
+        }
+        for (int i = 0; i < fgWindowViews.length; i++) {
+            if (fgWindowViews[i] != null) {
+                fgWindowViews[i].release();
+                roiWindowViews[i].release();
+                fgWindowViews[i] = null;
+                roiWindowViews[i] = null;
+            }
+        }
+    }
+
+    /**
+     * A submat is only a header over the frame's pixels, so keep one per source frame for as long as
+     * that frame keeps its buffer. Covers the single reused frame and every Mat in a pipeline ring.
+     */
+    private Mat roiView(Mat frame) {
+        long data = frame.dataAddr();
+        for (int i = 0; i < roiViews.length; i++) {
+            if (roiViewSources[i] == frame && roiViewData[i] == data) {
+                return roiViews[i];
+            }
+        }
+        int slot = nextRoiView;
+        nextRoiView = (nextRoiView + 1) % roiViews.length;
+        if (roiViews[slot] != null) {
+            roiViews[slot].release();
+        }
+        roiViewSources[slot] = frame;
+        roiViewData[slot] = data;
+        roiViews[slot] = frame.submat(analyzed);
+        return roiViews[slot];
+    }
+
+    public double motionPercentage() {
+        return motionPercentage;
+    }
+
+    public double largestContourArea() {
+        return largestContourArea;
+    }
+
+    public int significantContours() {
+        return significantContours;
+    }
+
+    public double largestCentroidX() {
+        return largestCentroidX;
+    }
+
+    /**
+     * Every blob found in the last frame, whether or not it passed the area threshold.
+     */
+    public int blobCount() {
+        return blobCount;
+    }
+
+    /**
+     * Area of blob i at full resolution.
+     */
+    public double blobArea(int i) {
+        return blobAreas[i] / areaScale;
+    }
+
+    /**
+     * x centroid of blob i at full resolution.
+     */
+    public double blobCentroidX(int i) {
+        if (components) {
+            return (componentCentroids[(i + 1) * 2] + blobOffset.x) / scale;
+        }
+        double centroidX = polygonCentroidX(contours.get(i));
+        if (Double.isNaN(centroidX)) {
+            return video.frameWidth() / 2.0; // Default to center if calculation fails
+        }
+        return centroidX / scale;
+    }
+
+    /**
+     * A BGR copy of the frame at analysis scale, with the road polygon and large contours drawn on it.
+     */
+    public Mat debugImage(Mat frame) {
+        // A raw planar frame from --gray has its chroma below the luma rows
+        Mat source = frame.rows() > video.frameHeight() ? frame.submat(0, video.frameHeight(), 0, frame.cols()) : frame;
+        Mat image = new Mat();
+        if (scale < 1.0) {
+            Imgproc.resize(source, image, new Size(), scale, scale, Imgproc.INTER_AREA);
+        } else {
+            source.copyTo(image);
+        }
+        if (image.channels() == 1) {
+            Imgproc.cvtColor(image, image, Imgproc.COLOR_GRAY2BGR);
+        }
+        if (source != frame) {
+            source.release();
+        }
+        Helper.drawOverlay(image, polygons, largeContours());
+        if (window != null) {
+            Point topLeft = new Point(roiOffset.x + window.x, roiOffset.y + window.y);
+            Imgproc.rectangle(image, topLeft, new Point(topLeft.x + window.width, topLeft.y + window.height), new Scalar(255, 0, 0), 2);
+        }
+        return image;
+    }
+
+    /**
+     * Large contours, or with --components the bounding boxes of large components. Debug output only, so allocating here is fine.
+     */
+    private List<MatOfPoint> largeContours() {
+        List<MatOfPoint> largeContours = new ArrayList<>();
+        for (int i = 0; i < blobCount; i++) {
+            if (blobAreas[i] > scaledAreaThreshold) {
+                if (components) {
+                    int stat = (i + 1) * STAT_COLUMNS;
+                    double left = componentStats[stat + Imgproc.CC_STAT_LEFT] + blobOffset.x;
+                    double top = componentStats[stat + Imgproc.CC_STAT_TOP] + blobOffset.y;
+                    double right = left + componentStats[stat + Imgproc.CC_STAT_WIDTH];
+                    double bottom = top + componentStats[stat + Imgproc.CC_STAT_HEIGHT];
+                    largeContours.add(new MatOfPoint(new Point(left, top), new Point(right, top), new Point(right, bottom), new Point(left, bottom)));
+                } else {
+                    largeContours.add(contours.get(i));
+                }
+            }
+        }
+        return largeContours;
+    }
+
+    /**
+     * The cleaned motion mask of the last frame, only the search window's strip when --track narrowed it.
+     */
+    public Mat mask() {
+        return window != null ? windowMask : maskedFgMask;
+    }
+
+    private static Rect clippedBoundingRect(MatOfPoint polygon, int frameWidth, int frameHeight) {
+        Rect bounds = Imgproc.boundingRect(polygon);
+        int left = Math.max(bounds.x, 0);
+        int top = Math.max(bounds.y, 0);
+        int right = Math.min(bounds.x + bounds.width, frameWidth);
+        int bottom = Math.min(bounds.y + bounds.height, frameHeight);
+        return new Rect(left, top, right - left, bottom - top);
+    }
+
+    private void releaseContours() {
+        for (int i = 0; i < contours.size(); i++) {
+            contours.get(i).release();
+        }
+        contours.clear();
+    }
+
+    public void release() {
+        releaseContours();
+        releaseWindowViews();
+        for (Mat view : roiViews) {
+            if (view != null) {
+                view.release();
+            }
+        }
+        maskedFgMask.release();
+        windowMask.release();
+        hierarchy.release();
+        labels.release();
+        stats.release();
+        centroids.release();
+        fgMask.release();
+        grayFrame.release();
+        scaledFrame.release();
+        kernel.release();
+        roiMask.release();
+        backgroundModel.release();
+        roadPolygon.release();
+    }
+}
@@ -0,0 +1,130 @@
+package com.pinealpha;
+
+import com.pinealpha.util.Metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.StructuredTaskScope.Subtask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+/**
+ * Runs decode and analysis as two stages of a structured task scope, so H.264 decode latency hides behind analysis.
+ * Frames travel through a bounded ring of pre-allocated Mats that are reused for the whole clip.
+ */
+public class FramePipeline {
+
+    @FunctionalInterface
+    public interface FrameHandler {
+        /**
+         * Analyze one decoded frame. Returning true stops the pipeline and cancels the decoder.
+         */
+        boolean handle(Mat frame, int frameIndex) throws IOException;
+    }
+
+    /**
+     * Returns the number of frames handed to the handler.
+     */
+    public static int run(VideoCapture cap, int ringSize, FrameHandler handler) throws IOException {
+        BlockingQueue<Mat> free = new ArrayBlockingQueue<>(ringSize);
+        BlockingQueue<Mat> decoded = new ArrayBlockingQueue<>(ringSize + 1); // room for the end marker
+        Mat[] ring = new Mat[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new Mat();
+            free.add(ring[i]);
+        }
+        Mat endOfStream = new Mat();
+
+        try (var scope = StructuredTaskScope.open(new StopOnAnalysisResult())) {
+            scope.fork(() -> {
+                decode(cap, free, decoded, endOfStream);
+                return null;
+            });
+            scope.fork(() -> analyze(free, decoded, endOfStream, handler));
+            return scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Frame pipeline interrupted");
+        } catch (StructuredTaskScope.FailedException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Frame pipeline failed", e.getCause());
+        } finally {
+            // The scope has joined both stages by now, nothing else can touch the ring
+            for (Mat mat : ring) {
+                mat.release();
+            }
+            endOfStream.release();
+        }
+    }
+
+    private static void decode(VideoCapture cap, BlockingQueue<Mat> free, BlockingQueue<Mat> decoded, Mat endOfStream) throws InterruptedException {
+        while (true) {
+            Mat frame = free.take();
+            long start = System.nanoTime();
+            boolean read = cap.read(frame);
+            Metrics.record(Metrics.Stage.DECODE, start);
+            if (!read || frame.empty()) {
+                break;
+            }
+            decoded.put(frame);
+        }
+        decoded.put(endOfStream);
+    }
+
+    private static Integer analyze(BlockingQueue<Mat> free, BlockingQueue<Mat> decoded, Mat endOfStream, FrameHandler handler) throws IOException, InterruptedException {
+        int frameIndex = 0;
+        while (true) {
+            Mat frame = decoded.take();
+            if (frame == endOfStream) {
+                return frameIndex;
+            }
+            // Counted here rather than in decode, which may run a ring ahead of a clip that stops early
+            Metrics.countFrames(1);
+            boolean done = handler.handle(frame, frameIndex++);
+            free.put(frame);
+            if (done) {
+                return frameIndex;
+            }
+        }
+    }
+
+    /**
+     * Cancels the scope, and with it the decoder, as soon as the analysis stage returns or either stage fails.
+     * The decoder stage returns null, so any non-null result comes from the analysis stage.
+     */
+    private static final class StopOnAnalysisResult implements StructuredTaskScope.Joiner<Object, Integer> {
+        private volatile Integer frames;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        @Override
+        public boolean onComplete(Subtask<?> subtask) {
+            if (subtask.state() == Subtask.State.FAILED) {
+                failure.compareAndSet(null, subtask.exception());
+                return true;
+            }
+            if (subtask.state() == Subtask.State.SUCCESS && subtask.get() instanceof Integer result) {
+                frames = result;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Integer result() throws Throwable {
+            if (frames != null) {
+                return frames;
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            throw new IllegalStateException("Frame pipeline finished without an analysis result");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+
+import org.opencv.core.Mat;
+import org.opencv.video.BackgroundSubtractorMOG2;
+import org.opencv.video.Video;
+
+/**
+ * OpenCV's Gaussian mixture background subtractor.
+ */
+public class Mog2BackgroundModel implements BackgroundModel {
+
+    private final BackgroundSubtractorMOG2 bgSubtractor;
+
+    public Mog2BackgroundModel(AnalysisParameters parameters) {
+        bgSubtractor = Video.createBackgroundSubtractorMOG2();
+        bgSubtractor.setDetectShadows(parameters.bgDetectShadows());
+        bgSubtractor.setHistory(parameters.bgHistory());
+        bgSubtractor.setVarThreshold(parameters.bgVarThreshold()); // Lower threshold = more sensitive (default is 16)
+    }
+
+    @Override
+    public void apply(Mat frame, Mat fgMask, double learningRate) {
+        bgSubtractor.apply(frame, fgMask, learningRate);
+    }
+
+    @Override
+    public boolean lumaOnly() {
+        return false;
+    }
+
+    @Override
+    public void release() {
+        // The JNI object is freed when it's garbage collected
+    }
+}
@@ -0,0 +1,275 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Events;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Motion state machine for a single video: decides direction, when sustained motion starts and stops,
+ * and whether the clip is too noisy to use. Fed one frame of stats at a time by getCarSpeedFromVideo.
+ */
+public class MotionTracker {
+
+    private final String videoName;
+    private final VideoInfo video;
+    private final TrackerThresholds thresholds;
+    private final boolean debug;
+
+    // Frame the current event's early-frame and noise checks count from, 0 unless the tracker was reset mid-stream
+    private int startFrame;
+
+    private int firstMotionFrame;
+    private int lastMotionFrame;
+    private double firstMotionX;
+
+    // Track consecutive motion frames
+    private boolean hasMotion;
+    private int consecutiveMotionFrames;
+    private boolean sustainedMotion;
+    private int consecutiveNoMotionFrames;
+    private boolean carHasPassed;
+
+    // Direction detection variables
+    private boolean directionDetected;
+
+    // Direction-specific parameters
+    private double motionThreshold;
+    private double areaThreshold;
+    private int consecutiveFramesRequired;
+    private double endMotionThreshold; // For detecting when motion ends
+    private int noMotionFramesBeforeStop; // Consecutive frames with no motion to stop tracking
+
+    // Noise detection variables
+    private int earlyMotionFrames;
+    private int skippedEarlyFrames; // not analyzed, so left out of the early motion ratio
+    private boolean rejected;
+
+    public MotionTracker(String videoName, VideoInfo video, boolean debug) {
+        this(videoName, video, TrackerThresholds.DEFAULT, debug);
+    }
+
+    public MotionTracker(String videoName, VideoInfo video, TrackerThresholds thresholds, boolean debug) {
+        this.videoName = videoName;
+        this.video = video;
+        this.thresholds = thresholds;
+        this.debug = debug;
+        reset(0);
+    }
+
+    /**
+     * Forget the current event and start looking for the next one at startFrame, with the default thresholds.
+     * Frame numbers keep counting from the start of the video, so later events report absolute frames.
+     */
+    public void reset(int startFrame) {
+        this.startFrame = startFrame;
+        earlyMotionFrames = 0;
+        skippedEarlyFrames = 0;
+        rejected = false;
+        nextEvent();
+    }
+
+    /**
+     * Forget the car that has passed and look for the next one from the following frame, with the default thresholds.
+     * Unlike reset, the early frames still count from startFrame, so the next car isn't ignored for INITIAL_FRAME_SKIP
+     * frames and the noise check isn't started over for every car.
+     */
+    public void nextEvent() {
+        firstMotionFrame = -1;
+        lastMotionFrame = -1;
+        firstMotionX = -1;
+
+        hasMotion = false;
+        consecutiveMotionFrames = 0;
+        sustainedMotion = false;
+        consecutiveNoMotionFrames = 0;
+        carHasPassed = false;
+
+        directionDetected = false;
+
+        motionThreshold = thresholds.defaultMotionThreshold();
+        areaThreshold = thresholds.defaultAreaThreshold();
+        consecutiveFramesRequired = thresholds.defaultConsecutiveFramesRequired();
+        endMotionThreshold = thresholds.defaultEndMotionThreshold();
+        noMotionFramesBeforeStop = thresholds.defaultNoMotionFramesBeforeStop();
+    }
+
+    /**
+     * Advance past a frame that was never analyzed, e.g. one --stride stepped over while the road was idle. It counts
+     * as a frame without motion, but the early noise ratio is taken over the frames that were actually seen.
+     */
+    public void skip(int frameCount) {
+        if (frameCount - startFrame < Config.EARLY_FRAME_CUTOFF) {
+            skippedEarlyFrames++;
+        }
+        update(frameCount, 0, 0, -1);
+    }
+
+    /**
+     * Advance the state machine by one frame.
+     * largestCentroidX is the x centroid of the largest contour above areaThreshold(), only read when motion starts.
+     */
+    public void update(int frameCount, double motionPercentage, double largestContourArea, double largestCentroidX) {
+        int eventFrame = frameCount - startFrame;
+        hasMotion = eventFrame > Config.INITIAL_FRAME_SKIP && motionPercentage > motionThreshold && largestContourArea > areaThreshold;
+
+        if (hasMotion) {
+            if (eventFrame < Config.EARLY_FRAME_CUTOFF) {
+                earlyMotionFrames++;
+            }
+
+            consecutiveMotionFrames++;
+            consecutiveNoMotionFrames = 0;
+            if (consecutiveMotionFrames >= consecutiveFramesRequired && !sustainedMotion && !carHasPassed) {
+                // We've found significant sustained motion (likely a car)
+                sustainedMotion = true;
+                if (firstMotionFrame == -1) {
+                    firstMotionFrame = frameCount - (consecutiveFramesRequired - 1); // Mark when it actually started
+                    firstMotionX = largestCentroidX;
+
+                    // Detect direction based on starting position
+                    if (!directionDetected) {
+                        detectDirection(frameCount, firstMotionX < video.frameWidth() / 2.0);
+                    }
+                }
+            }
+        } else {
+            // Reset if no motion detected
+            consecutiveMotionFrames = 0;
+            consecutiveNoMotionFrames++;
+
+            if (sustainedMotion) {
+                // Stop if motion is very low OR we've had no motion for several frames
+                if (motionPercentage < endMotionThreshold || consecutiveNoMotionFrames >= noMotionFramesBeforeStop) {
+                    sustainedMotion = false;
+                    carHasPassed = true;
+                }
+            }
+        }
+
+        if (sustainedMotion && hasMotion) {
+            lastMotionFrame = frameCount;
+        }
+
+        // Check for excessive noise after early frames
+        if (eventFrame == Config.EARLY_FRAME_CUTOFF) {
+            double earlyMotionRatio = (double) earlyMotionFrames / (Config.EARLY_FRAME_CUTOFF - skippedEarlyFrames);
+            if (earlyMotionRatio > Config.NOISE_THRESHOLD) {
+                System.out.println(String.format("Video rejected due to excessive noise: %.1f%% of early frames had motion (threshold: %.1f%%)",
+                        earlyMotionRatio * 100, Config.NOISE_THRESHOLD * 100));
+                rejected = true;
+
+                Events.NoiseRejection event = new Events.NoiseRejection();
+                if (event.shouldCommit()) {
+                    event.video = videoName;
+                    event.frame = frameCount;
+                    event.earlyMotionRatio = earlyMotionRatio;
+                    event.noiseThreshold = Config.NOISE_THRESHOLD;
+                    event.commit();
+                }
+            } else if (debug) {
+                System.out.println(String.format("Early motion check passed: %.1f%% of frames had motion", earlyMotionRatio * 100));
+            }
+        }
+    }
+
+    private void detectDirection(int frameCount, boolean isLeftToRight) {
+        directionDetected = true;
+        System.out.println("Detected direction: " + (isLeftToRight ? "Left-to-Right" : "Right-to-Left"));
+
+        Events.DirectionDecision event = new Events.DirectionDecision();
+        if (event.shouldCommit()) {
+            event.video = videoName;
+            event.frame = frameCount;
+            event.direction = (isLeftToRight ? Direction.LeftToRight : Direction.RightToLeft).toString();
+            event.firstMotionX = firstMotionX;
+            event.commit();
+        }
+
+        if (isLeftToRight) {
+            motionThreshold = thresholds.leftToRightMotionThreshold();
+            areaThreshold = thresholds.leftToRightAreaThreshold();
+            consecutiveFramesRequired = thresholds.leftToRightConsecutiveFramesRequired();
+        } else {
+            // Right-to-left: car gets very small as it moves away
+            motionThreshold = thresholds.rightToLeftMotionThreshold();
+            areaThreshold = thresholds.rightToLeftAreaThreshold();
+            consecutiveFramesRequired = thresholds.rightToLeftConsecutiveFramesRequired();
+            endMotionThreshold = thresholds.rightToLeftEndMotionThreshold();
+            noMotionFramesBeforeStop = thresholds.rightToLeftNoMotionFramesBeforeStop();
+        }
+    }
+
+    public double areaThreshold() {
+        return areaThreshold;
+    }
+
+    public boolean hasMotion() {
+        return hasMotion;
+    }
+
+    public boolean sustainedMotion() {
+        return sustainedMotion;
+    }
+
+    /**
+     * True when the last frame had no motion and no car is being tracked.
+     */
+    public boolean isIdle() {
+        return !hasMotion && !sustainedMotion;
+    }
+
+    /**
+     * Short name for where the state machine is, for events and logs.
+     */
+    public String state() {
+        if (rejected) {
+            return "REJECTED";
+        } else if (carHasPassed) {
+            return "PASSED";
+        } else if (sustainedMotion) {
+            return "SUSTAINED";
+        } else if (hasMotion) {
+            return "MOTION";
+        }
+        return "IDLE";
+    }
+
+    public int consecutiveMotionFrames() {
+        return consecutiveMotionFrames;
+    }
+
+    public int firstMotionFrame() {
+        return firstMotionFrame;
+    }
+
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    public boolean carHasPassed() {
+        return carHasPassed;
+    }
+
+    /**
+     * True once no later frame can change the result.
+     */
+    public boolean isDone() {
+        return rejected || carHasPassed;
+    }
+
+    public MotionResult toResult(ZonedDateTime detectionTime, int totalFramesProcessed) {
+        if (rejected) {
+            return new MotionResult(video, detectionTime, Config.EARLY_FRAME_CUTOFF, -1, -1, -1, true);
+        }
+        return new MotionResult(
+                video,
+                detectionTime,
+                totalFramesProcessed,
+                firstMotionFrame,
+                lastMotionFrame,
+                firstMotionX,
+                false
+        );
+    }
+}
@@ -0,0 +1,180 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Helper;
+
+import java.io.IOException;
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+
+import org.opencv.core.Point;
+
+/**
+ * FFM binding for motion_analyze in libcvwrapper. The whole per-video motion loop (MOG2, ROI mask, morphology,
+ * contours, area and centroid) runs natively in one downcall and writes per-frame contour stats into a
+ * MemorySegment, instead of several JNI calls per frame.
+ *
+ * The downcall can't be interrupted, so --timeout doesn't stop a clip on this backend: it runs to the end.
+ */
+public class NativeMotionKernel {
+
+    // Mirrors ThresholdStats in cv_wrapper.cpp
+    private static final StructLayout THRESHOLD_STATS = MemoryLayout.structLayout(
+            ValueLayout.JAVA_DOUBLE.withName("total_area"),
+            ValueLayout.JAVA_DOUBLE.withName("largest_area"),
+            ValueLayout.JAVA_DOUBLE.withName("largest_centroid_x"),
+            ValueLayout.JAVA_INT.withName("significant_contours"),
+            ValueLayout.JAVA_INT.withName("reserved")
+    );
+    private static final long TOTAL_AREA = offsetOf("total_area");
+    private static final long LARGEST_AREA = offsetOf("largest_area");
+    private static final long LARGEST_CENTROID_X = offsetOf("largest_centroid_x");
+    private static final long SIGNIFICANT_CONTOURS = offsetOf("significant_contours");
+    // Buffer size when the container doesn't report a frame count, ten minutes at 30 fps
+    private static final int UNKNOWN_LENGTH_FRAMES = 18_000;
+
+    private static MethodHandle videoInfo;
+    private static MethodHandle analyze;
+
+    private static long offsetOf(String field) {
+        return THRESHOLD_STATS.byteOffset(MemoryLayout.PathElement.groupElement(field));
+    }
+
+    private static synchronized void load() throws IOException {
+        if (analyze != null) {
+            return;
+        }
+        try {
+            Helper.loadNativeOpenCV();
+        } catch (Throwable t) {
+            throw new IOException("Could not load libcvwrapper", t);
+        }
+
+        SymbolLookup lookup = SymbolLookup.loaderLookup();
+        Linker linker = Linker.nativeLinker();
+
+        videoInfo = linker.downcallHandle(
+                lookup.find("motion_video_info").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS)
+        );
+        analyze = linker.downcallHandle(
+                lookup.find("motion_analyze").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT,
+                        ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                        ValueLayout.JAVA_INT, ValueLayout.JAVA_DOUBLE, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT,
+                        ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                        ValueLayout.ADDRESS, ValueLayout.JAVA_INT)
+        );
+    }
+
+    public static boolean isAvailable() {
+        try {
+            load();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    public static VideoInfo videoInfo(String videoPath) throws IOException {
+        load();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment info = arena.allocate(ValueLayout.JAVA_DOUBLE, 4);
+            int opened = (int) videoInfo.invokeExact(arena.allocateFrom(videoPath), info);
+            if (opened != 1) {
+                throw new IOException("Could not open video: " + videoPath);
+            }
+            return new VideoInfo(
+                    info.getAtIndex(ValueLayout.JAVA_DOUBLE, 0),
+                    (int) info.getAtIndex(ValueLayout.JAVA_DOUBLE, 1),
+                    (int) info.getAtIndex(ValueLayout.JAVA_DOUBLE, 2),
+                    (int) info.getAtIndex(ValueLayout.JAVA_DOUBLE, 3)
+            );
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("motion_video_info failed for " + videoPath, t);
+        }
+    }
+
+    /**
+     * Analyze every frame of the video natively. The returned stats live in the caller's arena.
+     *
+     * The stats buffer is sized from CAP_PROP_FRAME_COUNT, which some containers underestimate or don't report. The
+     * native loop stops when the buffer is full, so a full buffer means the clip may go on: it's analyzed again with a
+     * bigger one. Buffers of earlier attempts stay in the arena until it closes.
+     */
+    public static FrameStats analyze(Arena arena, String videoPath, VideoInfo video, double[] areaThresholds) throws IOException {
+        load();
+
+        List<Point> roadPoints = Config.getRoadPoints(video.frameWidth());
+        MemorySegment points = arena.allocate(ValueLayout.JAVA_INT, roadPoints.size() * 2L);
+        for (int i = 0; i < roadPoints.size(); i++) {
+            points.setAtIndex(ValueLayout.JAVA_INT, 2L * i, (int) roadPoints.get(i).x);
+            points.setAtIndex(ValueLayout.JAVA_INT, 2L * i + 1, (int) roadPoints.get(i).y);
+        }
+
+        // Leave room for a frame count that is only an estimate
+        long maxFrames = video.totalFrames() > 0 ? video.totalFrames() * 2L + 16 : UNKNOWN_LENGTH_FRAMES;
+        while (true) {
+            if (maxFrames > Integer.MAX_VALUE) {
+                throw new IOException("Too many frames for the native stats buffer in " + videoPath);
+            }
+            MemorySegment stats = arena.allocate(THRESHOLD_STATS, maxFrames * areaThresholds.length);
+            int frames = runAnalyze(arena, videoPath, points, roadPoints.size(), areaThresholds, stats, (int) maxFrames);
+            if (frames < maxFrames) {
+                return new FrameStats(stats, frames, areaThresholds.length);
+            }
+            System.out.println("Native stats buffer filled up at " + maxFrames + " frames, analyzing " + videoPath + " again");
+            maxFrames *= 4;
+        }
+    }
+
+    /**
+     * One downcall to motion_analyze. Returns the number of frames analyzed, which is maxFrames if the buffer filled.
+     */
+    private static int runAnalyze(Arena arena, String videoPath, MemorySegment points, int pointCount, double[] areaThresholds,
+                                  MemorySegment stats, int maxFrames) throws IOException {
+        int frames;
+        try {
+            frames = (int) analyze.invokeExact(
+                    arena.allocateFrom(videoPath), points, pointCount,
+                    Config.BG_HISTORY, Config.BG_VAR_THRESHOLD, Config.BG_DETECT_SHADOWS ? 1 : 0, Config.KERNEL_SIZE,
+                    arena.allocateFrom(ValueLayout.JAVA_DOUBLE, areaThresholds), areaThresholds.length,
+                    stats, maxFrames);
+        } catch (Throwable t) {
+            throw new IOException("motion_analyze failed for " + videoPath, t);
+        }
+        if (frames < 0) {
+            throw new IOException("Could not open video: " + videoPath);
+        }
+        return frames;
+    }
+
+    /**
+     * View over the native ThresholdStats array: one entry per frame per area threshold.
+     */
+    public record FrameStats(MemorySegment segment, int frames, int thresholdCount) {
+
+        private long offset(int frame, int threshold) {
+            return ((long) frame * thresholdCount + threshold) * THRESHOLD_STATS.byteSize();
+        }
+
+        public double totalArea(int frame, int threshold) {
+            return segment.get(ValueLayout.JAVA_DOUBLE, offset(frame, threshold) + TOTAL_AREA);
+        }
+
+        public double largestArea(int frame, int threshold) {
+            return segment.get(ValueLayout.JAVA_DOUBLE, offset(frame, threshold) + LARGEST_AREA);
+        }
+
+        public double largestCentroidX(int frame, int threshold) {
+            return segment.get(ValueLayout.JAVA_DOUBLE, offset(frame, threshold) + LARGEST_CENTROID_X);
+        }
+
+        public int significantContours(int frame, int threshold) {
+            return segment.get(ValueLayout.JAVA_INT, offset(frame, threshold) + SIGNIFICANT_CONTOURS);
+        }
+    }
+}
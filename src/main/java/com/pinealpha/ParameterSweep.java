@@ -0,0 +1,225 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Helper;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Scores a grid of analysis parameters and tracker thresholds against clips with known first and last motion frames.
+ *
+ * Each clip is decoded once. Every decoded frame goes to one FrameAnalyzer per combination of background subtractor
+ * and kernel settings, run in parallel, and each analyzer records its features in memory as with --save-features.
+ * The tracker threshold combinations are then replayed over those features, which costs next to nothing, so adding
+ * threshold values to the grid barely changes the run time. Throughput is per analyzer and per core, and threshold
+ * variants share the throughput of their analysis settings.
+ *
+ * A grid is written as name=value,value;name=value,..., with names from AnalysisParameters and TrackerThresholds,
+ * e.g. bgHistory=10,20;kernelSize=2,3;defaultAreaThreshold=1500,2000,2500
+ */
+public class ParameterSweep {
+
+    public record Expected(int firstMotionFrame, int lastMotionFrame, Direction direction) {
+    }
+
+    /**
+     * passed counts clips with the right direction and both frames within the tolerance. Frame error is the mean
+     * of the first and last frame errors, over clips where motion was found.
+     */
+    public record Row(Map<String, String> values, int passed, int clips, double meanFrameError, int maxFrameError,
+                      double framesPerSecond) {
+    }
+
+    private static final class Score {
+        int passed;
+        int detected;
+        long frameErrorSum;
+        int maxFrameError;
+    }
+
+    public static Map<String, List<String>> parseGrid(String spec) {
+        Map<String, List<String>> grid = new LinkedHashMap<>();
+        for (String axis : spec.split(";")) {
+            if (axis.isBlank()) {
+                continue;
+            }
+            int equals = axis.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected name=value,value in sweep grid, got: " + axis);
+            }
+            grid.put(axis.substring(0, equals).trim(), Arrays.stream(axis.substring(equals + 1).split(",")).map(String::trim).toList());
+        }
+        return grid;
+    }
+
+    /**
+     * clips maps a video path to its expected result. Returns one row per grid combination, best first.
+     */
+    public static List<Row> run(Map<String, Expected> clips, Map<String, List<String>> grid, Args args, int frameTolerance)
+            throws IOException, InterruptedException {
+        Map<String, List<String>> analysisAxes = new LinkedHashMap<>();
+        Map<String, List<String>> thresholdAxes = new LinkedHashMap<>();
+        grid.forEach((name, values) -> (AnalysisParameters.NAMES.contains(name) ? analysisAxes : thresholdAxes).put(name, values));
+
+        List<Map<String, String>> analysisCombinations = combinations(analysisAxes);
+        List<Map<String, String>> thresholdCombinations = combinations(thresholdAxes);
+        AnalysisParameters[] analyses = new AnalysisParameters[analysisCombinations.size()];
+        for (int a = 0; a < analyses.length; a++) {
+            AnalysisParameters parameters = AnalysisParameters.DEFAULT;
+            for (Map.Entry<String, String> value : analysisCombinations.get(a).entrySet()) {
+                parameters = parameters.with(value.getKey(), value.getValue());
+            }
+            analyses[a] = parameters;
+        }
+        TrackerThresholds[] thresholds = new TrackerThresholds[thresholdCombinations.size()];
+        for (int t = 0; t < thresholds.length; t++) {
+            thresholds[t] = TrackerThresholds.DEFAULT.with(thresholdCombinations.get(t));
+        }
+
+        System.out.println("Sweeping " + analyses.length + " analysis x " + thresholds.length + " threshold combinations over "
+                + clips.size() + " clips");
+        Score[][] scores = new Score[analyses.length][thresholds.length];
+        for (Score[] row : scores) {
+            Arrays.setAll(row, i -> new Score());
+        }
+        long[] analysisNanos = new long[analyses.length];
+        long[] analysisFrames = new long[analyses.length];
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(analyses.length, Runtime.getRuntime().availableProcessors()));
+        try {
+            for (Map.Entry<String, Expected> clip : clips.entrySet()) {
+                String fileName = Paths.get(clip.getKey()).getFileName().toString();
+                System.out.println("\nSweeping: " + fileName);
+                FeatureCache.Writer[] features = analyzeOnce(clip.getKey(), args, analyses, pool, analysisNanos, analysisFrames);
+
+                for (int a = 0; a < analyses.length; a++) {
+                    FeatureCache.Reader reader = new FeatureCache.Reader(features[a].toBuffer(), fileName);
+                    for (int t = 0; t < thresholds.length; t++) {
+                        score(scores[a][t], clip.getValue(), FeatureReplay.replay(reader, fileName, thresholds[t]), frameTolerance);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<Row> rows = new ArrayList<>();
+        for (int a = 0; a < analyses.length; a++) {
+            double framesPerSecond = analysisNanos[a] > 0 ? analysisFrames[a] * 1e9 / analysisNanos[a] : 0;
+            for (int t = 0; t < thresholds.length; t++) {
+                Map<String, String> values = new LinkedHashMap<>(analysisCombinations.get(a));
+                values.putAll(thresholdCombinations.get(t));
+                Score score = scores[a][t];
+                double meanFrameError = score.detected > 0 ? (double) score.frameErrorSum / (2.0 * score.detected) : Double.NaN;
+                rows.add(new Row(values, score.passed, clips.size(), meanFrameError, score.maxFrameError, framesPerSecond));
+            }
+        }
+        rows.sort(Comparator.comparingInt(Row::passed).reversed()
+                .thenComparingDouble(Row::meanFrameError)
+                .thenComparing(Comparator.comparingDouble(Row::framesPerSecond).reversed()));
+        return rows;
+    }
+
+    /**
+     * Decode the clip once and hand each frame to every analyzer in parallel, waiting for all of them before the next frame.
+     */
+    private static FeatureCache.Writer[] analyzeOnce(String videoPath, Args args, AnalysisParameters[] analyses, ExecutorService pool,
+                                                     long[] analysisNanos, long[] analysisFrames) throws IOException, InterruptedException {
+        VideoCapture cap = Helper.openVideo(videoPath, args);
+        VideoInfo video = new VideoInfo(
+                cap.get(Videoio.CAP_PROP_FPS),
+                (int) cap.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                (int) cap.get(Videoio.CAP_PROP_FRAME_HEIGHT),
+                (int) cap.get(Videoio.CAP_PROP_FRAME_COUNT)
+        );
+        FrameAnalyzer[] analyzers = new FrameAnalyzer[analyses.length];
+        FeatureCache.Writer[] features = new FeatureCache.Writer[analyses.length];
+        Mat frame = new Mat();
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int a = 0; a < analyses.length; a++) {
+                analyzers[a] = new FrameAnalyzer(video, args, analyses[a]);
+                features[a] = new FeatureCache.Writer(video, args);
+                int analysis = a;
+                tasks.add(() -> {
+                    long start = System.nanoTime();
+                    analyzers[analysis].analyze(frame, Config.FEATURE_MIN_AREA);
+                    analysisNanos[analysis] += System.nanoTime() - start;
+                    analysisFrames[analysis]++;
+                    features[analysis].record(analyzers[analysis]);
+                    return null;
+                });
+            }
+
+            // invokeAll waits for every task, so the next read never overwrites a frame still being analyzed
+            while (cap.read(frame) && !frame.empty()) {
+                for (Future<Void> done : pool.invokeAll(tasks)) {
+                    try {
+                        done.get();
+                    } catch (ExecutionException e) {
+                        throw new IOException("Analysis failed on " + videoPath, e.getCause());
+                    }
+                }
+            }
+            return features;
+        } finally {
+            frame.release();
+            for (FrameAnalyzer analyzer : analyzers) {
+                if (analyzer != null) {
+                    analyzer.release();
+                }
+            }
+            cap.release();
+        }
+    }
+
+    private static void score(Score score, Expected expected, MotionResult result, int frameTolerance) {
+        if (!result.hasMotion()) {
+            return;
+        }
+        int firstError = Math.abs(expected.firstMotionFrame() - result.firstMotionFrame());
+        int lastError = Math.abs(expected.lastMotionFrame() - result.lastMotionFrame());
+        score.detected++;
+        score.frameErrorSum += firstError + lastError;
+        score.maxFrameError = Math.max(score.maxFrameError, Math.max(firstError, lastError));
+        if (result.getDirection() == expected.direction() && firstError <= frameTolerance && lastError <= frameTolerance) {
+            score.passed++;
+        }
+    }
+
+    /**
+     * Every combination of one value per axis, in grid order. No axes gives a single empty combination.
+     */
+    private static List<Map<String, String>> combinations(Map<String, List<String>> axes) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (Map.Entry<String, List<String>> axis : axes.entrySet()) {
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> combination : combinations) {
+                for (String value : axis.getValue()) {
+                    Map<String, String> extended = new LinkedHashMap<>(combination);
+                    extended.put(axis.getKey(), value);
+                    next.add(extended);
+                }
+            }
+            combinations = next;
+        }
+        return combinations;
+    }
+
+    public static void print(List<Row> rows) {
+        System.out.println(String.format("%n%4s  %6s  %9s  %9s  %10s  %s", "rank", "passed", "mean err", "max err", "frames/s", "parameters"));
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            System.out.println(String.format("%4d  %3d/%-2d  %9.1f  %9d  %10.1f  %s", i + 1, row.passed(), row.clips(),
+                    row.meanFrameError(), row.maxFrameError(), row.framesPerSecond(), row.values().isEmpty() ? "(Config defaults)" : row.values()));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.pinealpha;
+
+import com.pinealpha.model.Config;
+
+import org.opencv.core.Rect;
+
+/**
+ * --track: once the tracker has a car, predicts where its blob will be in the next frame and picks the strip of the
+ * analyzed region around it, so FrameAnalyzer only masks, closes and measures that strip.
+ *
+ * The prediction is the last centroid plus the average velocity over the last few frames. The strip spans the full
+ * height and a fixed fraction of the width, clamped to the region, so its size never changes. Its position snaps to
+ * TRACK_WINDOW_STEP pixels, so there are only slots() places it can be. The whole region is
+ * still analyzed every TRACK_RECHECK_FRAMES frames, and until two frames in a row have a blob, so a lost or second
+ * car is picked up again. Positions are x in analysis coordinates, relative to the analyzed region.
+ */
+public class SearchWindow {
+
+    private final int regionWidth;
+    private final int step;
+    private final Rect window;
+    private final double[] history = new double[Config.TRACK_VELOCITY_FRAMES];
+    private int observed; // valid entries in history, the newest at next - 1
+    private int next;
+    private int windowedFrames; // since the last full frame
+    private boolean following;
+
+    public SearchWindow(int regionWidth, int regionHeight) {
+        this.regionWidth = regionWidth;
+        int width = Math.max(1, (int) Math.round(regionWidth * Config.TRACK_WINDOW_FRACTION));
+        window = new Rect(0, 0, width, regionHeight);
+        step = Config.TRACK_WINDOW_STEP;
+    }
+
+    /**
+     * Follow the blob while the tracker has sustained motion. Stopping forgets its history.
+     */
+    public void follow(boolean following) {
+        if (!following) {
+            observed = 0;
+        }
+        this.following = following;
+    }
+
+    /**
+     * The strip to analyze in the next frame, or null for the whole region. The Rect is reused, read it before the next call.
+     */
+    public Rect next() {
+        if (!following || observed < 2 || window.width >= regionWidth || windowedFrames >= Config.TRACK_RECHECK_FRAMES) {
+            windowedFrames = 0;
+            return null;
+        }
+        windowedFrames++;
+
+        int length = history.length;
+        double last = history[(next - 1 + length) % length];
+        double first = history[(next - observed + length) % length];
+        double predicted = last + (last - first) / (observed - 1);
+
+        long snapped = Math.round((predicted - window.width / 2.0) / step) * step;
+        window.x = Math.clamp(snapped, 0, regionWidth - window.width);
+        return window;
+    }
+
+    /**
+     * Number of distinct strip positions.
+     */
+    public int slots() {
+        return slot(Math.max(0, regionWidth - window.width)) + 1;
+    }
+
+    /**
+     * Position of the strip next() last returned, from 0 to slots() - 1. The right edge of the region is its own slot
+     * even when it isn't a multiple of the step.
+     */
+    public int slot() {
+        return slot(window.x);
+    }
+
+    private int slot(int x) {
+        return (x + step - 1) / step;
+    }
+
+    /**
+     * Centroid of the largest blob in the frame just analyzed, or NaN if there was none, which falls back to the
+     * whole region until the blob is found again.
+     */
+    public void observe(double x) {
+        if (Double.isNaN(x)) {
+            observed = 0;
+            return;
+        }
+        history[next] = x;
+        next = (next + 1) % history.length;
+        observed = Math.min(observed + 1, history.length);
+    }
+}
@@ -2,24 +2,24 @@ package com.pinealpha;
 
 import com.pinealpha.model.*;
 import com.pinealpha.util.Helper;
+import com.pinealpha.util.DebugWriter;
 import com.pinealpha.util.DatabaseManager;
+import com.pinealpha.util.Events;
+import com.pinealpha.util.Metrics;
+import com.pinealpha.util.ProcessedIndex;
+import com.pinealpha.util.ResultSink;
 
 import java.io.*;
+import java.lang.foreign.Arena;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 
 import java.util.*;
 
 import org.opencv.core.Mat;
-import org.opencv.core.Size;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.Point;
-import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
-import org.opencv.video.Video;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
-import org.opencv.imgcodecs.Imgcodecs;
 
 public class SpeedDetect {
 
@@ -27,258 +27,287 @@ public class SpeedDetect {
         System.out.println("---- SPEEDCAM STARTING! ----");
 
         Helper.loadJNIOpenCV();
-        DatabaseManager.createTablesIfNotExists();
 
-        processVideos(Helper.parseArgs(args));
+        Args parsedArgs = Helper.parseArgs(args);
+        if (parsedArgs.sink() == Sink.DB) {
+            DatabaseManager.createTablesIfNotExists();
+        }
+        if (parsedArgs.servePort() > 0) {
+            SpeedServer.run(parsedArgs);
+        } else if (parsedArgs.watch()) {
+            WatchDaemon.run(parsedArgs);
+        } else if (parsedArgs.stream()) {
+            StreamProcessor.run(parsedArgs);
+        } else {
+            processVideos(parsedArgs);
+        }
 
         System.out.println("---- SPEEDCAM COMPLETE! ----");
     }
 
-    public static Map<String, MotionResult> processVideos(Args args) throws IOException {
+    public static Map<String, MotionResult> processVideos(Args args) throws IOException, InterruptedException {
         List<String> videoPaths = Helper.getVideoPaths(args.videoPath());
-        Map<String, MotionResult> results = new LinkedHashMap<>();
-        int processed = 0;
-
-        for (String path : videoPaths) {
-            System.out.println("\nProcessing: " + path);
-            MotionResult result = getCarSpeedFromVideo(path, args.debug());
-            result.printMotionResults();
-            DatabaseManager.insertMotionResult(result, path);
-            results.put(path, result);
-            processed++;
+        // Results are persisted in the background, closing the sink waits until they're durable.
+        // The index marks each video done once the sink reports its result durable.
+        ResultSink sink = ResultSink.open(args);
+        // Started once the sink is open, so a sink that fails to open doesn't leave a run behind
+        Metrics.start(args.metricsIntervalSeconds());
+        try (ProcessedIndex index = new ProcessedIndex(Path.of(Config.PROCESSED_INDEX_FILE), ProcessedIndex.fingerprint(args), sink)) {
+            Map<String, MotionResult> previous = new HashMap<>();
+            List<String> pending = new ArrayList<>();
+            for (String path : videoPaths) {
+                MotionResult result = previousResult(index, path, args);
+                if (result != null) {
+                    previous.put(path, result);
+                } else {
+                    pending.add(path);
+                }
+            }
+            if (!previous.isEmpty()) {
+                System.out.println("Skipping " + previous.size() + " videos already processed with the same clip and parameters");
+            }
+
+            Map<String, MotionResult> processed = new HashMap<>();
+            if (args.workers() > 1 && pending.size() > 1) {
+                BatchProcessor.Results batch = BatchProcessor.process(pending, args, index);
+                processed.putAll(batch.results());
+                if (!batch.failures().isEmpty()) {
+                    // Not in the index, so the next run tries them again
+                    System.err.println("\n" + batch.failures().size() + " videos failed:");
+                    batch.failures().forEach((path, e) -> System.err.println("  - " + path + ": " + e.getMessage()));
+                }
+            } else {
+                for (String path : pending) {
+                    System.out.println("\nProcessing: " + path);
+                    MotionResult result = getCarSpeedFromVideo(path, args);
+                    result.printMotionResults();
+                    index.submit(result, path);
+                    Metrics.countVideo();
+                    processed.put(path, result);
+                }
+            }
+
+            // Same order as the input, whether a result is new or from an earlier run
+            Map<String, MotionResult> results = new LinkedHashMap<>();
+            for (String path : videoPaths) {
+                MotionResult result = processed.containsKey(path) ? processed.get(path) : previous.get(path);
+                if (result != null) {
+                    results.put(path, result);
+                }
+            }
+            return results;
+        } finally {
+            Metrics.finish();
         }
-        return results;
+    }
+
+    /**
+     * The result of an earlier run to reuse instead of processing the video, or null. With --save-features a video
+     * whose feature file is missing or stale is processed again even if its result is already known.
+     */
+    static MotionResult previousResult(ProcessedIndex index, String path, Args args) throws IOException {
+        if (!args.resume() || (args.saveFeatures() && !FeatureCache.isCurrent(path, args))) {
+            return null;
+        }
+        return index.lookup(path);
     }
 
     public static MotionResult getCarSpeedFromVideo(String videoPath, boolean debug) throws IOException {
-        VideoCapture cap = new VideoCapture(videoPath);
+        return getCarSpeedFromVideo(videoPath, Args.of(videoPath, debug));
+    }
+
+    public static MotionResult getCarSpeedFromVideo(String videoPath, Args args) throws IOException {
+        if (args.backend() == Backend.FFM) {
+            return getCarSpeedFromVideoNative(videoPath, args);
+        }
 
         String fileName = Paths.get(videoPath).getFileName().toString();
         ZonedDateTime detectionTime = Helper.parseDateTimeFromFilename(fileName);
 
+        Events.VideoOpen openEvent = new Events.VideoOpen();
+        openEvent.begin();
+        VideoCapture cap = Helper.openVideo(videoPath, args);
+
         VideoInfo video = new VideoInfo(
                 cap.get(Videoio.CAP_PROP_FPS),
                 (int) cap.get(Videoio.CAP_PROP_FRAME_WIDTH),
                 (int) cap.get(Videoio.CAP_PROP_FRAME_HEIGHT),
                 (int) cap.get(Videoio.CAP_PROP_FRAME_COUNT)
         );
-
-        List<Point> roadPoints = Config.getRoadPoints(video.frameWidth());
-
-        MatOfPoint roadPolygon = new MatOfPoint();
-        roadPolygon.fromList(roadPoints);
-        Mat roiMask = Mat.zeros(video.frameHeight(), video.frameWidth(), org.opencv.core.CvType.CV_8UC1);
-        List<MatOfPoint> polygons = Arrays.asList(roadPolygon);
-        Imgproc.fillPoly(roiMask, polygons, new Scalar(255));
-
-        // Create background subtractor for motion detection
-        var bgSubtractor = Video.createBackgroundSubtractorMOG2();
-        bgSubtractor.setDetectShadows(Config.BG_DETECT_SHADOWS);
-        bgSubtractor.setHistory(Config.BG_HISTORY);
-        bgSubtractor.setVarThreshold(Config.BG_VAR_THRESHOLD); // Lower threshold = more sensitive (default is 16)
-
-        Mat frame = new Mat();
-        Mat fgMask = new Mat();
-        Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(Config.KERNEL_SIZE, Config.KERNEL_SIZE));
-
-        int frameCount = 0;
-        int firstMotionFrame = -1;
-        int lastMotionFrame = -1;
-        double firstMotionX = -1;
-
-        // Track consecutive motion frames
-        int consecutiveMotionFrames = 0;
-        boolean sustainedMotion = false;
-        int consecutiveNoMotionFrames = 0;
-        boolean carHasPassed = false;
-
-        // Direction detection variables
-        boolean directionDetected = false;
-        boolean isLeftToRight;
-
-        // Direction-specific parameters
-        double motionThreshold = Config.DEFAULT_MOTION_THRESHOLD;
-        double areaThreshold = Config.DEFAULT_AREA_THRESHOLD;
-        int consecutiveFramesRequired = Config.DEFAULT_CONSECUTIVE_FRAMES_REQUIRED;
-        double endMotionThreshold = Config.DEFAULT_END_MOTION_THRESHOLD; // For detecting when motion ends
-        int noMotionFramesBeforeStop = Config.DEFAULT_NO_MOTION_FRAMES_BEFORE_STOP; // Consecutive frames with no motion to stop tracking
-
-        // Noise detection variables
-        int earlyMotionFrames = 0;
-        final int EARLY_FRAME_CUTOFF = Config.EARLY_FRAME_CUTOFF;
-        final double NOISE_THRESHOLD = Config.NOISE_THRESHOLD; // 55% motion in early frames = too noisy
-
-        while (cap.read(frame)) {
-            if (frame.empty()) {
-                break;
-            }
-
-            // Apply background subtraction to full frame
-            bgSubtractor.apply(frame, fgMask);
-
-            // Apply ROI mask to motion mask
-            Mat maskedFgMask = new Mat();
-            org.opencv.core.Core.bitwise_and(fgMask, roiMask, maskedFgMask);
-
-            // Remove noise with morphological operations
-            // Use MORPH_CLOSE to connect nearby regions
-            Imgproc.morphologyEx(maskedFgMask, maskedFgMask, Imgproc.MORPH_CLOSE, kernel);
-
-            // Find contours of moving objects in masked area
-            List<MatOfPoint> contours = new ArrayList<>();
-            Mat hierarchy = new Mat();
-            Imgproc.findContours(maskedFgMask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-
-            // Filter contours by size (look for car-sized objects)
-            int significantContours = 0;
-            double totalMotionArea = 0;
-            List<MatOfPoint> largeContours = new ArrayList<>();
-
-            for (MatOfPoint contour : contours) {
-                double area = Imgproc.contourArea(contour);
-
-                if (area > areaThreshold) {
-                    significantContours++;
-                    totalMotionArea += area;
-                    largeContours.add(contour);
-                }
-            }
-
-            double largestContourArea = largeContours.stream()
-                    .mapToDouble(c -> Imgproc.contourArea(c))
-                    .max()
-                    .orElse(0);
-
-            double motionPercentage = (totalMotionArea * 100.0) / (video.frameWidth() * video.frameHeight());
-            boolean hasMotion = frameCount > Config.INITIAL_FRAME_SKIP && motionPercentage > motionThreshold && largestContourArea > areaThreshold;
-
-            if (hasMotion) {
-                if (frameCount < EARLY_FRAME_CUTOFF) {
-                    earlyMotionFrames++;
-                }
-
-                consecutiveMotionFrames++;
-                consecutiveNoMotionFrames = 0;
-                if (consecutiveMotionFrames >= consecutiveFramesRequired && !sustainedMotion && !carHasPassed) {
-                    // We've found significant sustained motion (likely a car)
-                    sustainedMotion = true;
-                    if (firstMotionFrame == -1) {
-                        firstMotionFrame = frameCount - (consecutiveFramesRequired - 1); // Mark when it actually started
-
-                        // Calculate centroid of largest contour to determine initial position
-                        if (!largeContours.isEmpty()) {
-                            MatOfPoint largestContour = largeContours.stream()
-                                    .max((c1, c2) -> Double.compare(Imgproc.contourArea(c1), Imgproc.contourArea(c2)))
-                                    .orElse(largeContours.get(0));
-
-                            // Calculate centroid using moments
-                            var moments = Imgproc.moments(largestContour);
-                            if (moments.m00 != 0) {
-                                firstMotionX = moments.m10 / moments.m00;
-                            } else {
-                                firstMotionX = video.frameWidth() / 2.0; // Default to center if calculation fails
-                            }
-                            largestContour.release();
-
-                            // Detect direction based on starting position
-                            if (!directionDetected) {
-                                isLeftToRight = firstMotionX < video.frameWidth() / 2.0;
-                                directionDetected = true;
-                                System.out.println("Detected direction: " + (isLeftToRight ? "Left-to-Right" : "Right-to-Left"));
-
-                                if (isLeftToRight) {
-                                    motionThreshold = Config.LeftToRight.MOTION_THRESHOLD;
-                                    areaThreshold = Config.LeftToRight.AREA_THRESHOLD;
-                                    consecutiveFramesRequired = Config.LeftToRight.CONSECUTIVE_FRAMES_REQUIRED;
-                                } else {
-                                    // Right-to-left: car gets very small as it moves away
-                                    motionThreshold = Config.RightToLeft.MOTION_THRESHOLD;
-                                    areaThreshold = Config.RightToLeft.AREA_THRESHOLD;
-                                    consecutiveFramesRequired = Config.RightToLeft.CONSECUTIVE_FRAMES_REQUIRED;
-                                    endMotionThreshold = Config.RightToLeft.END_MOTION_THRESHOLD;
-                                    noMotionFramesBeforeStop = Config.RightToLeft.NO_MOTION_FRAMES_BEFORE_STOP;
-                                }
-                            }
-                        }
+        commitVideoOpen(openEvent, fileName, args.backend(), video);
+
+        FrameAnalyzer analyzer = new FrameAnalyzer(video, args);
+        MotionTracker tracker = new MotionTracker(fileName, video, args.debug());
+        // Saving features needs every frame of the clip, so no stride and no stopping early
+        FeatureCache.Writer features = args.saveFeatures() ? new FeatureCache.Writer(video, args) : null;
+        DebugWriter debugWriter = args.debug() ? new DebugWriter(fileName, video, args) : null;
+
+        try {
+            int frameCount;
+            if (args.stride() > 1 && features == null) {
+                // Probe every Nth frame while the road is empty, full rate with backfill once something moves
+                frameCount = AdaptiveStride.run(cap, analyzer, tracker, args.stride(), (frame, frameIndex) -> {
+                    analyzeFrame(fileName, frame, frameIndex, analyzer, tracker, debugWriter);
+                    return tracker.isDone();
+                });
+            } else if (args.pipelined()) {
+                // Decode runs ahead on its own thread; stop both stages once the result can't change
+                frameCount = FramePipeline.run(cap, Config.PIPELINE_RING_SIZE, (frame, frameIndex) -> {
+                    analyzeFrame(fileName, frame, frameIndex, analyzer, tracker, debugWriter);
+                    if (features != null) {
+                        features.record(analyzer);
+                        return false;
                     }
-                }
+                    return tracker.isDone();
+                });
             } else {
-                // Reset if no motion detected
-                consecutiveMotionFrames = 0;
-                consecutiveNoMotionFrames++;
-
-                if (sustainedMotion) {
-                    // Stop if motion is very low OR we've had no motion for several frames
-                    if (motionPercentage < endMotionThreshold || consecutiveNoMotionFrames >= noMotionFramesBeforeStop) {
-                        sustainedMotion = false;
-                        carHasPassed = true;
+                frameCount = 0;
+                Mat frame = new Mat();
+                try {
+                    while (true) {
+                        long start = System.nanoTime();
+                        boolean read = cap.read(frame);
+                        Metrics.record(Metrics.Stage.DECODE, start);
+                        if (!read || frame.empty()) {
+                            break;
+                        }
+                        Metrics.countFrames(1);
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Processing of " + fileName + " interrupted at frame " + frameCount);
+                        }
+
+                        analyzeFrame(fileName, frame, frameCount, analyzer, tracker, debugWriter);
+                        if (features != null) {
+                            features.record(analyzer);
+                        } else if (tracker.isRejected()) {
+                            break;
+                        }
+                        frameCount++;
                     }
+                } finally {
+                    frame.release();
                 }
             }
+            if (features != null) {
+                features.write(FeatureCache.pathFor(videoPath));
+            }
+            return tracker.toResult(detectionTime, frameCount);
+        } finally {
+            // Clean up OpenCV resources
+            if (debugWriter != null) {
+                debugWriter.close();
+            }
+            analyzer.release();
+            cap.release();
+        }
+    }
 
-            if (debug) {
-                Helper.writeImageToFile(frame, "target/frame_" + frameCount + (sustainedMotion ? "_sustained" : "") + ".jpg", polygons, largeContours);
+    /**
+     * Runs the motion loop in libcvwrapper through one FFM downcall, then replays the per-frame stats through the tracker.
+     * Analyzes every frame at full resolution; --roi-crop, --scale, --stride, --pipeline, --gray, --bg, --components and --track only apply to the JNI backend.
+     */
+    private static MotionResult getCarSpeedFromVideoNative(String videoPath, Args args) throws IOException {
+        String fileName = Paths.get(videoPath).getFileName().toString();
+        ZonedDateTime detectionTime = Helper.parseDateTimeFromFilename(fileName);
 
-                // Also save the motion mask to see what the detector sees
-                if (hasMotion || sustainedMotion) {
-                    Imgcodecs.imwrite("target/mask_" + frameCount + ".jpg", maskedFgMask);
-                }
-                System.out.println("Frame " + frameCount
-                        + String.format(": motion=%.4f%%, largest=%.0f, contours=%d, hasMotion=%s, consecutive=%d, sustained=%s",
-                                motionPercentage, largestContourArea, significantContours, hasMotion, consecutiveMotionFrames, sustainedMotion));
-            } else {
-                if (frameCount % Config.FRAME_PROGRESS_INTERVAL == 0) {
-                    System.out.println("Frame " + frameCount
-                            + String.format(": motion=%.4f%%, largest=%.0f, contours=%d, hasMotion=%s, consecutive=%d",
-                                    motionPercentage, largestContourArea, significantContours, hasMotion, consecutiveMotionFrames));
+        Events.VideoOpen openEvent = new Events.VideoOpen();
+        openEvent.begin();
+        VideoInfo video = NativeMotionKernel.videoInfo(videoPath);
+        commitVideoOpen(openEvent, fileName, args.backend(), video);
+        MotionTracker tracker = new MotionTracker(fileName, video, args.debug());
+
+        // Stats come back for every area threshold the tracker can switch to, each frame reads the current one
+        double[] areaThresholds = TrackerThresholds.DEFAULT.areaThresholds();
+
+        try (Arena arena = Arena.ofConfined()) {
+            NativeMotionKernel.FrameStats stats = NativeMotionKernel.analyze(arena, videoPath, video, areaThresholds);
+            // Per-stage timings happen inside the native loop, only throughput is visible from here
+            Metrics.countFrames(stats.frames());
+
+            for (int frameCount = 0; frameCount < stats.frames(); frameCount++) {
+                Events.FrameAnalysis event = new Events.FrameAnalysis();
+                event.begin();
+                int t = indexOf(areaThresholds, tracker.areaThreshold());
+                double motionPercentage = (stats.totalArea(frameCount, t) * 100.0) / (video.frameWidth() * video.frameHeight());
+                tracker.update(frameCount, motionPercentage, stats.largestArea(frameCount, t), stats.largestCentroidX(frameCount, t));
+                commitFrameAnalysis(event, fileName, frameCount, motionPercentage, stats.largestArea(frameCount, t), stats.significantContours(frameCount, t), tracker);
+                printFrameStats(frameCount, motionPercentage, stats.largestArea(frameCount, t), stats.significantContours(frameCount, t), tracker, args.debug());
+                if (tracker.isRejected()) {
+                    break;
                 }
             }
+            return tracker.toResult(detectionTime, stats.frames());
+        }
+    }
 
-            if (sustainedMotion && hasMotion) {
-                lastMotionFrame = frameCount;
+    private static int indexOf(double[] values, double value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
             }
+        }
+        throw new IllegalArgumentException("No native stats for area threshold " + value);
+    }
 
-            // Check for excessive noise after early frames
-            if (frameCount == EARLY_FRAME_CUTOFF) {
-                double earlyMotionRatio = (double) earlyMotionFrames / EARLY_FRAME_CUTOFF;
-                if (earlyMotionRatio > NOISE_THRESHOLD) {
-                    System.out.println(String.format("Video rejected due to excessive noise: %.1f%% of early frames had motion (threshold: %.1f%%)",
-                            earlyMotionRatio * 100, NOISE_THRESHOLD * 100));
-                    return new MotionResult(video, detectionTime, frameCount, -1, -1, -1, true);
-                }
-                if (debug) {
-                    System.out.println(String.format("Early motion check passed: %.1f%% of frames had motion", earlyMotionRatio * 100));
-                }
-            }
+    /**
+     * debugWriter is null unless --debug is on.
+     */
+    static void analyzeFrame(String fileName, Mat frame, int frameCount, FrameAnalyzer analyzer, MotionTracker tracker, DebugWriter debugWriter) {
+        Events.FrameAnalysis event = new Events.FrameAnalysis();
+        event.begin();
+        analyzer.follow(tracker.sustainedMotion());
+        analyzer.analyze(frame, tracker.areaThreshold());
+        tracker.update(frameCount, analyzer.motionPercentage(), analyzer.largestContourArea(), analyzer.largestCentroidX());
+        commitFrameAnalysis(event, fileName, frameCount, analyzer.motionPercentage(), analyzer.largestContourArea(), analyzer.significantContours(), tracker);
+
+        if (debugWriter != null && debugWriter.wants(frameCount)) {
+            // Also save the motion mask to see what the detector sees
+            Mat mask = debugWriter.writesMasks() && (tracker.hasMotion() || tracker.sustainedMotion()) ? analyzer.mask().clone() : null;
+            debugWriter.write(frameCount, tracker.sustainedMotion(), analyzer.debugImage(frame), mask);
+        }
+        printFrameStats(frameCount, analyzer.motionPercentage(), analyzer.largestContourArea(), analyzer.significantContours(), tracker, debugWriter != null);
+    }
 
-            frameCount++;
+    private static void commitVideoOpen(Events.VideoOpen event, String fileName, Backend backend, VideoInfo video) {
+        if (event.shouldCommit()) {
+            event.video = fileName;
+            event.backend = backend.name();
+            event.width = video.frameWidth();
+            event.height = video.frameHeight();
+            event.fps = video.fps();
+            event.totalFrames = video.totalFrames();
+            event.commit();
+        }
+    }
 
-            maskedFgMask.release();
-            hierarchy.release();
-            for (MatOfPoint contour : contours) {
-                contour.release();
-            }
-            contours.clear();
-            largeContours.clear();
+    private static void commitFrameAnalysis(Events.FrameAnalysis event, String fileName, int frameCount, double motionPercentage,
+                                            double largestContourArea, int significantContours, MotionTracker tracker) {
+        if (event.shouldCommit()) {
+            event.video = fileName;
+            event.frame = frameCount;
+            event.motionPercentage = motionPercentage;
+            event.largestContourArea = largestContourArea;
+            event.significantContours = significantContours;
+            event.state = tracker.state();
+            event.commit();
         }
+    }
 
-        // Clean up OpenCV resources
-        frame.release();
-        fgMask.release();
-        kernel.release();
-        roiMask.release();
-        roadPolygon.release();
-        cap.release();
-
-        return new MotionResult(
-                video,
-                detectionTime,
-                frameCount,
-                firstMotionFrame,
-                lastMotionFrame,
-                firstMotionX,
-                false
-        );
+    private static void printFrameStats(int frameCount, double motionPercentage, double largestContourArea, int significantContours,
+                                        MotionTracker tracker, boolean debug) {
+        if (debug) {
+            System.out.println("Frame " + frameCount
+                    + String.format(": motion=%.4f%%, largest=%.0f, contours=%d, hasMotion=%s, consecutive=%d, sustained=%s",
+                            motionPercentage, largestContourArea, significantContours,
+                            tracker.hasMotion(), tracker.consecutiveMotionFrames(), tracker.sustainedMotion()));
+        } else {
+            if (frameCount % Config.FRAME_PROGRESS_INTERVAL == 0) {
+                System.out.println("Frame " + frameCount
+                        + String.format(": motion=%.4f%%, largest=%.0f, contours=%d, hasMotion=%s, consecutive=%d",
+                                motionPercentage, largestContourArea, significantContours,
+                                tracker.hasMotion(), tracker.consecutiveMotionFrames()));
+            }
+        }
     }
 
 }
@@ -0,0 +1,254 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Helper;
+import com.pinealpha.util.Metrics;
+import com.pinealpha.util.ResultSink;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.opencv.core.Core;
+
+/**
+ * --serve mode: stays resident with OpenCV loaded, the JIT warm and one result sink open, and takes jobs over HTTP on
+ * the loopback interface, so each clip only costs its own processing.
+ *
+ * POST /jobs with one command line argument per line, e.g. "--in", a path, "--scale", "0.5". Every option that
+ * changes how clips are analyzed works per job; the sink, worker count and metrics are the server's. Clips from all
+ * jobs share one pool of --workers threads and each is abandoned after the job's --timeout. Results are written back
+ * as they finish, one JSON object per line, and also go to the sink as in a batch run. Jobs always process their
+ * clips, the processed index is not consulted. GET /health answers "ok". Ctrl-C lets clips in progress finish and
+ * drains the sink.
+ */
+public class SpeedServer {
+
+    private record Clip(String path, MotionResult result, long nanos, String error) {
+    }
+
+    public static void run(Args args) throws IOException, InterruptedException {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        // Same split as BatchProcessor, for the lifetime of the server
+        Core.setNumThreads(Math.max(1, cpus / args.workers()));
+
+        // Ctrl-C releases the server, then waits for its cleanup
+        CountDownLatch stop = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread shutdownHook = new Thread(() -> {
+            stop.countDown();
+            try {
+                // Answering the jobs in progress, then stopping the clips nobody waits for, each up to the timeout
+                stopped.await(2L * args.videoTimeoutSeconds() + 30L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try {
+            run(args, ResultSink.open(args), stop);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Serve until stop is released, then finish the clips in progress and close the sink.
+     */
+    static void run(Args args, ResultSink sink, CountDownLatch stop) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(args.workers());
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        // One thread per connected client, each mostly waiting on its clips
+        ExecutorService connections = Executors.newCachedThreadPool();
+        HttpServer server = null;
+
+        Metrics.start(args.metricsIntervalSeconds());
+        try {
+            // Fails if the port is taken, the finally below still closes the sink
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), args.servePort()), 0);
+            server.setExecutor(connections);
+            server.createContext("/jobs", exchange -> handleJob(exchange, pool, sink, watchdog));
+            server.createContext("/health", exchange -> respond(exchange, 200, "ok\n"));
+
+            server.start();
+            System.out.println("Serving on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                    + " with " + args.workers() + " workers, Ctrl-C to stop");
+            stop.await();
+            System.out.println("\nStopping server, waiting for clips in progress");
+        } finally {
+            // Stop accepting jobs, let queued and running clips finish so their clients get answers
+            if (server != null) {
+                server.stop(args.videoTimeoutSeconds());
+            }
+            try {
+                awaitClips(pool, args.videoTimeoutSeconds());
+            } finally {
+                // Only now nothing can submit to the sink any more
+                watchdog.shutdownNow();
+                connections.shutdown();
+                try {
+                    sink.close();
+                } finally {
+                    Metrics.finish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for the pool to run out of clips. Past timeoutSeconds, drop the queued ones and interrupt the running ones,
+     * then keep waiting until they've actually stopped.
+     */
+    private static void awaitClips(ExecutorService pool, int timeoutSeconds) throws InterruptedException {
+        pool.shutdown();
+        if (pool.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+            return;
+        }
+        System.err.println("Clips still running after " + timeoutSeconds + " seconds, stopping them");
+        for (Runnable queued : pool.shutdownNow()) {
+            // Completes the clip for the job waiting on it
+            if (queued instanceof Future<?> clip) {
+                clip.cancel(false);
+            }
+        }
+        while (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+            System.err.println("Waiting for clips to stop");
+        }
+    }
+
+    private static void handleJob(HttpExchange exchange, ExecutorService pool, ResultSink sink, ScheduledExecutorService watchdog)
+            throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "POST one argument per line\n");
+                return;
+            }
+            Args job;
+            List<String> videoPaths;
+            try {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                job = Helper.parse(body.lines().map(String::strip).filter(line -> !line.isEmpty()).toArray(String[]::new));
+                if (job.videoPath() == null || job.watch() || job.stream() || job.servePort() > 0) {
+                    throw new IllegalArgumentException("A job needs --in and can't use --watch, --stream or --serve");
+                }
+                if (!new File(job.videoPath()).exists()) {
+                    throw new IllegalArgumentException("Path does not exist: " + job.videoPath());
+                }
+                videoPaths = Helper.getVideoPaths(job.videoPath());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            CompletionService<Clip> clips = new ExecutorCompletionService<>(pool);
+            List<Future<Clip>> pending = new ArrayList<>();
+            for (String path : videoPaths) {
+                pending.add(clips.submit(() -> process(path, job, sink, watchdog)));
+            }
+
+            // Chunked, one line per clip as it finishes
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            long start = System.nanoTime();
+            try {
+                for (int i = 0; i < videoPaths.size(); i++) {
+                    out.write(toJson(clips.take().get()).getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                out.write(("{\"clips\":" + videoPaths.size() + ",\"millis\":" + (System.nanoTime() - start) / 1_000_000 + "}\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // Client went away, don't spend the workers on clips nobody is waiting for
+                cancel(pending);
+                throw e;
+            } catch (ExecutionException e) {
+                cancel(pending);
+                throw new IOException("Job on " + job.videoPath() + " failed", e.getCause());
+            } catch (CancellationException e) {
+                // The server is stopping
+                cancel(pending);
+                throw new IOException("Job on " + job.videoPath() + " cancelled", e);
+            } catch (InterruptedException e) {
+                cancel(pending);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void cancel(List<Future<Clip>> clips) {
+        for (Future<Clip> clip : clips) {
+            clip.cancel(true);
+        }
+    }
+
+    private static Clip process(String path, Args job, ResultSink sink, ScheduledExecutorService watchdog) {
+        long start = System.nanoTime();
+        try {
+            MotionResult result = BatchProcessor.processWithTimeout(path, job, sink, watchdog);
+            return new Clip(path, result, System.nanoTime() - start, null);
+        } catch (Exception e) {
+            System.err.println("Error processing " + path + ": " + e.getMessage());
+            return new Clip(path, null, System.nanoTime() - start, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static String toJson(Clip clip) {
+        StringBuilder json = new StringBuilder("{\"video\":").append(quote(clip.path()));
+        json.append(",\"millis\":").append(clip.nanos() / 1_000_000);
+        if (clip.error() != null) {
+            json.append(",\"error\":").append(quote(clip.error()));
+        } else {
+            MotionResult result = clip.result();
+            json.append(",\"detectionTime\":").append(result.detectionTime() != null ? quote(result.detectionTime().toString()) : "null");
+            json.append(",\"framesProcessed\":").append(result.totalFramesProcessed());
+            json.append(",\"rejected\":").append(result.isRejected());
+            json.append(",\"hasMotion\":").append(result.hasMotion());
+            if (result.hasMotion()) {
+                json.append(",\"firstMotionFrame\":").append(result.firstMotionFrame());
+                json.append(",\"lastMotionFrame\":").append(result.lastMotionFrame());
+                json.append(",\"direction\":").append(quote(result.getDirection().toString()));
+                json.append(",\"speedMph\":").append(String.format(Locale.ROOT, "%.1f", result.getSpeedMph()));
+            }
+        }
+        return json.append("}\n").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
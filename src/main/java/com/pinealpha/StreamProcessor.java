@@ -0,0 +1,153 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.DebugWriter;
+import com.pinealpha.util.Helper;
+import com.pinealpha.util.Metrics;
+import com.pinealpha.util.ResultSink;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * --stream mode: finds every vehicle in a long recording in a single pass, instead of one car per clip.
+ *
+ * After each car has passed, its MotionResult is emitted and the tracker resets to look for the next one, while the
+ * background model keeps running so there is no second warm-up. Given a directory, the clips are read back to back
+ * in recording order as one source: the background model carries over between clips, and an event in progress is
+ * closed at each clip boundary. Every event's detection time is the clip's filename time and its frame numbers are
+ * relative to that clip, the same as a result from a batch run, so its first motion time is the offset into the clip.
+ */
+public class StreamProcessor {
+
+    public static List<MotionResult> run(Args args) throws IOException, InterruptedException {
+        Metrics.start(args.metricsIntervalSeconds());
+        try (ResultSink sink = ResultSink.open(args)) {
+            return run(args, sink);
+        } finally {
+            Metrics.finish();
+        }
+    }
+
+    static List<MotionResult> run(Args args, ResultSink sink) throws IOException, InterruptedException {
+        List<String> sources = inRecordingOrder(Helper.getVideoPaths(args.videoPath()));
+        List<MotionResult> events = new ArrayList<>();
+        FrameAnalyzer analyzer = null;
+        VideoInfo analyzerVideo = null;
+
+        try {
+            for (String path : sources) {
+                System.out.println("\nStreaming: " + path);
+                VideoCapture cap = Helper.openVideo(path, args);
+                try {
+                    VideoInfo video = new VideoInfo(
+                            cap.get(Videoio.CAP_PROP_FPS),
+                            (int) cap.get(Videoio.CAP_PROP_FRAME_WIDTH),
+                            (int) cap.get(Videoio.CAP_PROP_FRAME_HEIGHT),
+                            (int) cap.get(Videoio.CAP_PROP_FRAME_COUNT)
+                    );
+                    // Keep the learned background unless the camera geometry changed
+                    if (analyzer == null || analyzerVideo.frameWidth() != video.frameWidth() || analyzerVideo.frameHeight() != video.frameHeight()) {
+                        if (analyzer != null) {
+                            analyzer.release();
+                        }
+                        analyzer = new FrameAnalyzer(video, args);
+                        analyzerVideo = video;
+                    }
+                    processSource(path, cap, video, analyzer, args, sink, events);
+                    Metrics.countVideo();
+                } finally {
+                    cap.release();
+                }
+            }
+        } finally {
+            if (analyzer != null) {
+                analyzer.release();
+            }
+        }
+
+        System.out.println("\n" + events.size() + " vehicles found in " + sources.size() + " source(s)");
+        return events;
+    }
+
+    private static void processSource(String path, VideoCapture cap, VideoInfo video, FrameAnalyzer analyzer, Args args,
+                                      ResultSink sink, List<MotionResult> events) throws IOException, InterruptedException {
+        String fileName = Paths.get(path).getFileName().toString();
+        ZonedDateTime startTime = Helper.parseDateTimeFromFilename(fileName);
+        MotionTracker tracker = new MotionTracker(fileName, video, args.debug());
+
+        DebugWriter debugWriter = args.debug() ? new DebugWriter(fileName, video, args) : null;
+        Mat frame = new Mat();
+        int frameCount = 0;
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                boolean read = cap.read(frame);
+                Metrics.record(Metrics.Stage.DECODE, start);
+                if (!read || frame.empty()) {
+                    break;
+                }
+                Metrics.countFrames(1);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Streaming of " + fileName + " interrupted at frame " + frameCount);
+                }
+
+                SpeedDetect.analyzeFrame(fileName, frame, frameCount, analyzer, tracker, debugWriter);
+
+                if (tracker.carHasPassed()) {
+                    emit(tracker, startTime, frameCount + 1, path, sink, events);
+                    tracker.nextEvent();
+                } else if (tracker.isRejected()) {
+                    System.out.println("Skipping noisy stretch of " + fileName + " ending at frame " + frameCount);
+                    tracker.reset(frameCount + 1);
+                }
+                frameCount++;
+            }
+        } finally {
+            frame.release();
+            if (debugWriter != null) {
+                debugWriter.close();
+            }
+        }
+
+        // A car still in view when the clip ends
+        if (tracker.sustainedMotion()) {
+            emit(tracker, startTime, frameCount, path, sink, events);
+        }
+    }
+
+    private static void emit(MotionTracker tracker, ZonedDateTime startTime, int framesProcessed, String path,
+                             ResultSink sink, List<MotionResult> events) throws IOException, InterruptedException {
+        MotionResult result = tracker.toResult(startTime, framesProcessed);
+
+        System.out.println("\nVehicle " + (events.size() + 1) + ":");
+        result.printMotionResults();
+        sink.submit(result, path);
+        events.add(result);
+    }
+
+    /**
+     * Sort clips by the time in their filename, falling back to the listing order if a name doesn't parse.
+     */
+    private static List<String> inRecordingOrder(List<String> paths) {
+        Map<String, ZonedDateTime> times = new HashMap<>();
+        try {
+            for (String path : paths) {
+                times.put(path, Helper.parseDateTimeFromFilename(Paths.get(path).getFileName().toString()));
+            }
+        } catch (DateTimeParseException e) {
+            return paths;
+        }
+        List<String> sorted = new ArrayList<>(paths);
+        sorted.sort(Comparator.comparing(times::get));
+        return sorted;
+    }
+}
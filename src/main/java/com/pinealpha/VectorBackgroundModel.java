@@ -0,0 +1,168 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.MatSegments;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Single running Gaussian per pixel on luma, in Java with the Vector API. Mean and variance live in off-heap
+ * MemorySegments, and frames and masks are read and written in place through their native addresses, so a frame
+ * costs no JNI calls beyond allocating the mask once.
+ *
+ * Follows MOG2's parameters with a single mode: the learning rate is 1 / min(2 * frames seen, bgHistory), a pixel is
+ * foreground when its squared distance from the mean is above bgVarThreshold times the variance, and the variance
+ * starts at and is clamped to MOG2's defaults. Unlike MOG2, every pixel is updated each frame, foreground or not.
+ * There is no shadow detection: FrameAnalyzer counts MOG2's shadow pixels as motion anyway.
+ */
+public class VectorBackgroundModel implements BackgroundModel {
+
+    // MOG2's defaults for fVarInit, fVarMin and fVarMax
+    private static final float VAR_INIT = 15f;
+    private static final float VAR_MIN = 4f;
+    private static final float VAR_MAX = 5 * VAR_INIT;
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+    // One pixel per float lane, but never narrower than the smallest (64-bit) shape. With 128-bit floats (NEON) one
+    // load of pixels widens into two float vectors.
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, FLOATS.vectorBitSize() / 4)));
+    private static final int PARTS = BYTES.length() / FLOATS.length();
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private final int history;
+    private final float varThreshold;
+    private final Arena arena = Arena.ofShared();
+    private MemorySegment mean;
+    private MemorySegment variance;
+    private int rows;
+    private int cols;
+    private long framesSeen = 0;
+
+    public VectorBackgroundModel(AnalysisParameters parameters) {
+        history = parameters.bgHistory();
+        varThreshold = (float) parameters.bgVarThreshold();
+    }
+
+    @Override
+    public void apply(Mat frame, Mat fgMask, double learningRate) {
+        if (frame.type() != CvType.CV_8UC1) {
+            throw new IllegalArgumentException("VectorBackgroundModel needs 8-bit single-channel frames, got " + frame);
+        }
+        fgMask.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+
+        framesSeen++;
+        if (mean == null) {
+            rows = frame.rows();
+            cols = frame.cols();
+            mean = arena.allocate((long) rows * cols * Float.BYTES, FLOATS.vectorByteSize());
+            variance = arena.allocate((long) rows * cols * Float.BYTES, FLOATS.vectorByteSize());
+            initialize(frame, fgMask);
+            return;
+        } else if (frame.rows() != rows || frame.cols() != cols) {
+            throw new IllegalArgumentException("Frame size changed from " + cols + "x" + rows + " to " + frame.cols() + "x" + frame.rows());
+        }
+
+        float alpha = (float) (learningRate >= 0 && framesSeen > 1 ? learningRate : 1.0 / Math.min(2 * framesSeen, history));
+        long frameStep = MatSegments.rowStride(frame);
+        long maskStep = MatSegments.rowStride(fgMask);
+        MemorySegment pixels = MatSegments.of(frame);
+        MemorySegment mask = MatSegments.of(fgMask);
+        for (int y = 0; y < rows; y++) {
+            updateRow(pixels, y * frameStep, mask, y * maskStep, (long) y * cols * Float.BYTES, alpha);
+        }
+    }
+
+    private void updateRow(MemorySegment pixels, long pixelOffset, MemorySegment mask, long maskOffset, long modelOffset, float alpha) {
+        FloatVector background = FloatVector.zero(FLOATS);
+        FloatVector foreground = FloatVector.broadcast(FLOATS, 255f);
+        int x = 0;
+        for (int bound = BYTES.loopBound(cols); x < bound; x += BYTES.length()) {
+            ByteVector values = ByteVector.fromMemorySegment(BYTES, pixels, pixelOffset + x, ORDER);
+            ByteVector moved = ByteVector.zero(BYTES);
+            for (int part = 0; part < PARTS; part++) {
+                long model = modelOffset + (long) (x + part * FLOATS.length()) * Float.BYTES;
+                FloatVector value = (FloatVector) values.convertShape(VectorOperators.ZERO_EXTEND_B2I, INTS, part)
+                        .convertShape(VectorOperators.I2F, FLOATS, 0);
+                FloatVector mu = FloatVector.fromMemorySegment(FLOATS, mean, model, ORDER);
+                FloatVector var = FloatVector.fromMemorySegment(FLOATS, variance, model, ORDER);
+
+                FloatVector diff = value.sub(mu);
+                FloatVector distance = diff.mul(diff);
+                VectorMask<Float> moving = distance.compare(VectorOperators.GT, var.mul(varThreshold));
+
+                mu.add(diff.mul(alpha)).intoMemorySegment(mean, model, ORDER);
+                var.add(distance.sub(var).mul(alpha)).max(VAR_MIN).min(VAR_MAX).intoMemorySegment(variance, model, ORDER);
+
+                // 255 or 0 per lane, narrowed back to one byte per pixel in this part's block of the output
+                moved = moved.or((ByteVector) background.blend(foreground, moving)
+                        .convertShape(VectorOperators.F2I, INTS, 0)
+                        .convertShape(VectorOperators.I2B, BYTES, -part));
+            }
+            moved.intoMemorySegment(mask, maskOffset + x, ORDER);
+        }
+        for (; x < cols; x++) {
+            long model = modelOffset + (long) x * Float.BYTES;
+            float value = Byte.toUnsignedInt(pixels.get(ValueLayout.JAVA_BYTE, pixelOffset + x));
+            float mu = mean.get(ValueLayout.JAVA_FLOAT, model);
+            float var = variance.get(ValueLayout.JAVA_FLOAT, model);
+
+            float diff = value - mu;
+            float distance = diff * diff;
+            mask.set(ValueLayout.JAVA_BYTE, maskOffset + x, (byte) (distance > varThreshold * var ? 255 : 0));
+
+            mean.set(ValueLayout.JAVA_FLOAT, model, mu + alpha * diff);
+            variance.set(ValueLayout.JAVA_FLOAT, model, Math.clamp(var + alpha * (distance - var), VAR_MIN, VAR_MAX));
+        }
+    }
+
+    /**
+     * The first frame becomes the mean. MOG2 reports the whole first frame as foreground; the tracker skips the
+     * first frames anyway, so an empty mask is returned instead.
+     */
+    private void initialize(Mat frame, Mat fgMask) {
+        long frameStep = MatSegments.rowStride(frame);
+        long maskStep = MatSegments.rowStride(fgMask);
+        MemorySegment pixels = MatSegments.of(frame);
+        MemorySegment mask = MatSegments.of(fgMask);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                long model = ((long) y * cols + x) * Float.BYTES;
+                mean.set(ValueLayout.JAVA_FLOAT, model, Byte.toUnsignedInt(pixels.get(ValueLayout.JAVA_BYTE, y * frameStep + x)));
+                variance.set(ValueLayout.JAVA_FLOAT, model, VAR_INIT);
+            }
+            mask.asSlice(y * maskStep, cols).fill((byte) 0);
+        }
+    }
+
+    float meanAt(int row, int col) {
+        return mean.get(ValueLayout.JAVA_FLOAT, ((long) row * cols + col) * Float.BYTES);
+    }
+
+    float varianceAt(int row, int col) {
+        return variance.get(ValueLayout.JAVA_FLOAT, ((long) row * cols + col) * Float.BYTES);
+    }
+
+    @Override
+    public boolean lumaOnly() {
+        return true;
+    }
+
+    @Override
+    public void release() {
+        arena.close();
+    }
+}
@@ -0,0 +1,212 @@
+package com.pinealpha;
+
+import com.pinealpha.model.*;
+import com.pinealpha.util.Helper;
+import com.pinealpha.util.Metrics;
+import com.pinealpha.util.ProcessedIndex;
+import com.pinealpha.util.ResultSink;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Continuous ingest for --watch: keeps the JVM and OpenCV loaded and processes each clip shortly after the camera
+ * finishes writing it.
+ *
+ * New and modified files are reported by a WatchService. A clip is handed to the worker pool once its size and
+ * modification time have stayed the same for WATCH_SETTLE_MILLIS, so half-written files are never opened.
+ * Clips that were already in the directory at startup are picked up too, unless the processed index says they're done
+ * (or with --no-resume, only unless they were done since startup). A clip that fails is tried again later, up to
+ * WATCH_MAX_ATTEMPTS in all. Ctrl-C lets in-flight videos finish, drains the result sink, and leaves queued clips for
+ * the next start.
+ */
+public class WatchDaemon {
+
+    record Candidate(long size, long modified, long stableSinceNanos) {
+    }
+
+    /**
+     * Clips that failed and when each may be tried again. The wait grows with every failure, and after
+     * WATCH_MAX_ATTEMPTS the clip is left alone until the daemon restarts. Workers report, the watch thread collects.
+     */
+    static final class Retries {
+
+        private record Retry(int attempts, long dueNanos) {
+        }
+
+        private final Map<Path, Retry> failed = new HashMap<>();
+
+        /**
+         * Record a failed attempt. Returns true if the clip will be tried again.
+         */
+        synchronized boolean failed(Path path, long nowNanos) {
+            Retry previous = failed.get(path);
+            int attempts = previous != null ? previous.attempts() + 1 : 1;
+            boolean again = attempts < Config.WATCH_MAX_ATTEMPTS;
+            long due = again ? nowNanos + attempts * Config.WATCH_RETRY_MILLIS * 1_000_000L : Long.MAX_VALUE;
+            failed.put(path, new Retry(attempts, due));
+            return again;
+        }
+
+        synchronized void succeeded(Path path) {
+            failed.remove(path);
+        }
+
+        synchronized boolean givenUp(Path path) {
+            Retry retry = failed.get(path);
+            return retry != null && retry.attempts() >= Config.WATCH_MAX_ATTEMPTS;
+        }
+
+        /**
+         * Clips whose wait is over. Each is returned once per failure.
+         */
+        synchronized List<Path> due(long nowNanos) {
+            List<Path> due = new ArrayList<>();
+            for (Map.Entry<Path, Retry> entry : failed.entrySet()) {
+                Retry retry = entry.getValue();
+                if (retry.dueNanos() <= nowNanos) {
+                    due.add(entry.getKey());
+                    entry.setValue(new Retry(retry.attempts(), Long.MAX_VALUE));
+                }
+            }
+            return due;
+        }
+    }
+
+    public static void run(Args args) throws IOException, InterruptedException {
+        Path dir = Path.of(args.videoPath());
+        if (!Files.isDirectory(dir)) {
+            System.err.println("Error: --watch needs a directory, got: " + dir);
+            System.exit(1);
+        }
+
+        ResultSink sink = ResultSink.open(args);
+        ProcessedIndex index = new ProcessedIndex(Path.of(Config.PROCESSED_INDEX_FILE), ProcessedIndex.fingerprint(args), sink);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(args.workers());
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+
+        // Files waiting to settle, null until they have been looked at once
+        Map<Path, Candidate> candidates = new HashMap<>();
+        Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+        Retries retries = new Retries();
+
+        // Ctrl-C interrupts the watch loop, then waits for the cleanup below
+        Thread watchThread = Thread.currentThread();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread shutdownHook = new Thread(() -> {
+            watchThread.interrupt();
+            try {
+                stopped.await(args.videoTimeoutSeconds() + 30L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        System.out.println("Watching " + dir.toAbsolutePath() + " with " + args.workers() + " workers, Ctrl-C to stop");
+        // Finished in the finally below
+        Metrics.start(args.metricsIntervalSeconds());
+        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            // Anything that landed while we weren't running
+            scan(dir, candidates);
+
+            while (true) {
+                WatchKey key = watcher.poll(Config.WATCH_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scan(dir, candidates);
+                        } else if (event.context() instanceof Path name && isClip(name)) {
+                            // Still being written, start the settle timer over
+                            candidates.put(dir.resolve(name), null);
+                        }
+                    }
+                    key.reset();
+                }
+
+                List<Path> ready = settled(candidates, System.nanoTime());
+                ready.addAll(retries.due(System.nanoTime()));
+                for (Path path : ready) {
+                    MotionResult done = args.saveFeatures() && !FeatureCache.isCurrent(path.toString(), args) ? null
+                            : args.resume() ? index.lookup(path.toString()) : index.lookupThisRun(path.toString());
+                    if (inFlight.contains(path) || retries.givenUp(path) || done != null) {
+                        continue;
+                    }
+                    inFlight.add(path);
+                    pool.submit(() -> {
+                        try {
+                            BatchProcessor.processWithTimeout(path.toString(), args, index, watchdog);
+                            retries.succeeded(path);
+                        } catch (Exception e) {
+                            boolean again = retries.failed(path, System.nanoTime());
+                            System.err.println("Error processing " + path + ": " + e.getMessage()
+                                    + (again ? ", trying again later" : ", giving up until the next start"));
+                        } finally {
+                            inFlight.remove(path);
+                        }
+                    });
+                }
+            }
+        } catch (InterruptedException e) {
+            System.out.println("\nStopping watch, waiting for " + pool.getActiveCount() + " videos in progress");
+        } finally {
+            // Clips still queued aren't in the index, so the next start picks them up
+            pool.getQueue().clear();
+            pool.shutdown();
+            pool.awaitTermination(args.videoTimeoutSeconds(), TimeUnit.SECONDS);
+            watchdog.shutdownNow();
+            try {
+                index.close();
+            } finally {
+                Metrics.finish();
+                stopped.countDown();
+            }
+        }
+    }
+
+    private static boolean isClip(Path name) {
+        String fileName = name.getFileName().toString();
+        return fileName.startsWith(Config.WATCH_FILE_PREFIX) && Helper.isVideoFile(fileName);
+    }
+
+    private static void scan(Path dir, Map<Path, Candidate> candidates) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(WatchDaemon::isClip).forEach(path -> candidates.putIfAbsent(path, null));
+        }
+    }
+
+    /**
+     * Remove and return the candidates whose size and modification time haven't changed for WATCH_SETTLE_MILLIS.
+     */
+    static List<Path> settled(Map<Path, Candidate> candidates, long now) {
+        List<Path> settled = new ArrayList<>();
+        Iterator<Map.Entry<Path, Candidate>> it = candidates.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Candidate> entry = it.next();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted or renamed before it settled
+                it.remove();
+                continue;
+            }
+
+            Candidate previous = entry.getValue();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (previous == null || previous.size() != attributes.size() || previous.modified() != modified) {
+                entry.setValue(new Candidate(attributes.size(), modified, now));
+            } else if (attributes.size() > 0 && now - previous.stableSinceNanos() >= Config.WATCH_SETTLE_MILLIS * 1_000_000L
+                    && Files.isReadable(entry.getKey())) {
+                settled.add(entry.getKey());
+                it.remove();
+            }
+        }
+        return settled;
+    }
+}
@@ -0,0 +1,36 @@
+package com.pinealpha.model;
+
+import java.util.*;
+
+/**
+ * Background subtractor and morphology settings for FrameAnalyzer. DEFAULT holds the values from Config;
+ * other instances are for parameter sweeps.
+ */
+public record AnalysisParameters(
+    boolean bgDetectShadows,
+    int bgHistory,
+    double bgVarThreshold,
+    int kernelSize
+) {
+    public static final AnalysisParameters DEFAULT = new AnalysisParameters(
+        Config.BG_DETECT_SHADOWS,
+        Config.BG_HISTORY,
+        Config.BG_VAR_THRESHOLD,
+        Config.KERNEL_SIZE
+    );
+
+    public static final Set<String> NAMES = Set.of("bgDetectShadows", "bgHistory", "bgVarThreshold", "kernelSize");
+
+    /**
+     * Copy with one value replaced by component name, e.g. ("bgHistory", "20").
+     */
+    public AnalysisParameters with(String name, String value) {
+        return switch (name) {
+            case "bgDetectShadows" -> new AnalysisParameters(Boolean.parseBoolean(value), bgHistory, bgVarThreshold, kernelSize);
+            case "bgHistory" -> new AnalysisParameters(bgDetectShadows, Integer.parseInt(value), bgVarThreshold, kernelSize);
+            case "bgVarThreshold" -> new AnalysisParameters(bgDetectShadows, bgHistory, Double.parseDouble(value), kernelSize);
+            case "kernelSize" -> new AnalysisParameters(bgDetectShadows, bgHistory, bgVarThreshold, Integer.parseInt(value));
+            default -> throw new IllegalArgumentException("Unknown analysis parameter: " + name);
+        };
+    }
+}
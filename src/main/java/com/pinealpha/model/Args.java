@@ -1,16 +1,125 @@
 package com.pinealpha.model;
 
-public record Args(String videoPath, boolean debug) {
-    
+public record Args(String videoPath, boolean debug, int workers, int videoTimeoutSeconds, boolean pipelined, boolean roiCrop, double scale, int stride, Backend backend,
+                   int metricsIntervalSeconds, Sink sink, boolean resume, boolean watch, boolean stream,
+                   boolean saveFeatures, boolean grayscale, BackgroundEngine backgroundEngine,
+                   boolean components, boolean track, int debugEvery, DebugOutput debugOutput, int servePort) {
+
+    /**
+     * Defaults for everything except the path and debug flag
+     */
+    public static Args of(String videoPath, boolean debug) {
+        return builder(videoPath).debug(debug).build();
+    }
+
+    /**
+     * Starts from the command line defaults, set only the options that differ.
+     */
+    public static Builder builder(String videoPath) {
+        return new Builder().videoPath(videoPath);
+    }
+
+    /**
+     * Starts from these options, e.g. args.toBuilder().stride(1).build() for the same run without striding.
+     */
+    public Builder toBuilder() {
+        return new Builder().videoPath(videoPath).debug(debug).workers(workers).videoTimeoutSeconds(videoTimeoutSeconds)
+                .pipelined(pipelined).roiCrop(roiCrop).scale(scale).stride(stride).backend(backend)
+                .metricsIntervalSeconds(metricsIntervalSeconds).sink(sink).resume(resume).watch(watch).stream(stream)
+                .saveFeatures(saveFeatures).grayscale(grayscale).backgroundEngine(backgroundEngine).components(components)
+                .track(track).debugEvery(debugEvery).debugOutput(debugOutput).servePort(servePort);
+    }
+
+    public static class Builder {
+        private String videoPath;
+        private boolean debug;
+        private int workers = Config.DEFAULT_WORKERS;
+        private int videoTimeoutSeconds = Config.VIDEO_TIMEOUT_SECONDS;
+        private boolean pipelined;
+        private boolean roiCrop;
+        private double scale = 1.0;
+        private int stride = 1;
+        private Backend backend = Backend.JNI;
+        private int metricsIntervalSeconds;
+        private Sink sink = Sink.DB;
+        private boolean resume = true;
+        private boolean watch;
+        private boolean stream;
+        private boolean saveFeatures;
+        private boolean grayscale;
+        private BackgroundEngine backgroundEngine = BackgroundEngine.MOG2;
+        private boolean components;
+        private boolean track;
+        private int debugEvery = 1;
+        private DebugOutput debugOutput = DebugOutput.FRAMES;
+        private int servePort;
+
+        private Builder() {
+        }
+
+        public Builder videoPath(String videoPath) { this.videoPath = videoPath; return this; }
+        public Builder debug(boolean debug) { this.debug = debug; return this; }
+        public Builder workers(int workers) { this.workers = workers; return this; }
+        public Builder videoTimeoutSeconds(int videoTimeoutSeconds) { this.videoTimeoutSeconds = videoTimeoutSeconds; return this; }
+        public Builder pipelined(boolean pipelined) { this.pipelined = pipelined; return this; }
+        public Builder roiCrop(boolean roiCrop) { this.roiCrop = roiCrop; return this; }
+        public Builder scale(double scale) { this.scale = scale; return this; }
+        public Builder stride(int stride) { this.stride = stride; return this; }
+        public Builder backend(Backend backend) { this.backend = backend; return this; }
+        public Builder metricsIntervalSeconds(int metricsIntervalSeconds) { this.metricsIntervalSeconds = metricsIntervalSeconds; return this; }
+        public Builder sink(Sink sink) { this.sink = sink; return this; }
+        public Builder resume(boolean resume) { this.resume = resume; return this; }
+        public Builder watch(boolean watch) { this.watch = watch; return this; }
+        public Builder stream(boolean stream) { this.stream = stream; return this; }
+        public Builder saveFeatures(boolean saveFeatures) { this.saveFeatures = saveFeatures; return this; }
+        public Builder grayscale(boolean grayscale) { this.grayscale = grayscale; return this; }
+        public Builder backgroundEngine(BackgroundEngine backgroundEngine) { this.backgroundEngine = backgroundEngine; return this; }
+        public Builder components(boolean components) { this.components = components; return this; }
+        public Builder track(boolean track) { this.track = track; return this; }
+        public Builder debugEvery(int debugEvery) { this.debugEvery = debugEvery; return this; }
+        public Builder debugOutput(DebugOutput debugOutput) { this.debugOutput = debugOutput; return this; }
+        public Builder servePort(int servePort) { this.servePort = servePort; return this; }
+
+        public Args build() {
+            return new Args(videoPath, debug, workers, videoTimeoutSeconds, pipelined, roiCrop, scale, stride, backend,
+                    metricsIntervalSeconds, sink, resume, watch, stream, saveFeatures, grayscale, backgroundEngine,
+                    components, track, debugEvery, debugOutput, servePort);
+        }
+    }
+
     public static void printUsage() {
-        System.out.println("\nUsage: java -jar speedcam.jar --in <video_path_or_directory> [--debug]");
+        System.out.println("\nUsage: java -jar speedcam.jar --in <video_path_or_directory> [--debug] [--debug-every <n>] [--debug-output frames|video] [--workers <n>] [--timeout <seconds>] [--pipeline] [--roi-crop] [--scale <factor>] [--stride <n>] [--backend jni|ffm] [--metrics-interval <seconds>] [--sink db|log] [--no-resume] [--watch] [--stream] [--save-features] [--gray] [--bg mog2|vector] [--components] [--track] [--serve <port>]");
         System.out.println("\nRequired arguments:");
         System.out.println("  --in <path>   Path to a video file or directory containing videos (local file system only)");
         System.out.println("\nOptional arguments:");
         System.out.println("  --debug               Enable debug mode (outputs frame images)");
+        System.out.println("  --debug-every <n>     With --debug, only write every nth frame (default: 1)");
+        System.out.println("  --debug-output frames|video With --debug, a JPEG per frame or one annotated video per clip (default: frames)");
+        System.out.println("  --workers <n>         Number of videos to process in parallel (default: " + Config.DEFAULT_WORKERS + ")");
+        System.out.println("  --timeout <seconds>   Give up on a single video after this long (default: " + Config.VIDEO_TIMEOUT_SECONDS + ")");
+        System.out.println("  --pipeline            Decode frames on a separate thread while the previous ones are analyzed");
+        System.out.println("  --roi-crop            Only run motion detection on the road polygon's bounding box");
+        System.out.println("  --scale <factor>      Run motion detection on frames downscaled by this factor, e.g. 0.5 (default: 1.0)");
+        System.out.println("  --stride <n>          While the road is empty only analyze every nth frame, backfilling once motion starts");
+        System.out.println("  --backend jni|ffm     Per-frame OpenCV JNI calls, or the whole motion loop in libcvwrapper via FFM (default: jni)");
+        System.out.println("                        The FFM loop can't be interrupted, so --timeout doesn't apply to it");
+        System.out.println("  --metrics-interval <s> Print stage latency and throughput metrics every s seconds, not just at the end");
+        System.out.println("  --sink db|log         Write results to the database, or to a local log for ResultLogUploader (default: db)");
+        System.out.println("  --no-resume           Reprocess videos already done with the same clip and parameters");
+        System.out.println("  --watch               Keep running and process new clips in the --in directory as the camera writes them");
+        System.out.println("  --stream              Find every vehicle in one long recording, or in a directory of clips read back to back");
+        System.out.println("  --save-features       Save per-frame motion features next to each video for FeatureReplay");
+        System.out.println("  --gray                Run motion detection on luma only, taken from the decoder where it supports that");
+        System.out.println("  --bg mog2|vector      OpenCV's MOG2 background model, or a running Gaussian in Java on luma (default: mog2)");
+        System.out.println("  --components          Measure moving blobs with connected-component labeling instead of contours");
+        System.out.println("  --track               Once a car is found, only look for blobs in a window around where it's headed");
+        System.out.println("  --serve <port>        Stay running and take jobs over HTTP on localhost:port, --in not needed");
         System.out.println("  --help, -h            Show this help message");
         System.out.println("\nExamples:");
         System.out.println("  java -jar speedcam.jar --in /path/to/video.mp4 --debug");
         System.out.println("  java -jar speedcam.jar --in /path/to/videos/");
+        System.out.println("  java -jar speedcam.jar --in /path/to/videos/ --workers 8");
+        System.out.println("  java -jar speedcam.jar --in /path/to/camera/ --watch --workers 2");
+        System.out.println("  java -jar speedcam.jar --serve 8080 --workers 4");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,6 @@
+package com.pinealpha.model;
+
+public enum Backend {
+    JNI, // OpenCV Java bindings, one JNI call per operation per frame
+    FFM  // Whole motion loop in libcvwrapper, called once per video through the FFM API
+}
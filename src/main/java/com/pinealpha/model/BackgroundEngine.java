@@ -0,0 +1,6 @@
+package com.pinealpha.model;
+
+public enum BackgroundEngine {
+    MOG2,  // OpenCV's BackgroundSubtractorMOG2 through JNI
+    VECTOR // Running Gaussian per pixel in Java, Vector API over off-heap buffers, luma only
+}
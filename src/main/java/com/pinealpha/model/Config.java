@@ -33,7 +33,47 @@ public class Config {
     // Frame processing
     public static final int INITIAL_FRAME_SKIP = 5; // Skip first N frames for motion detection
     public static final int FRAME_PROGRESS_INTERVAL = 25; // Print progress every N frames
+
+    // Batch processing
+    public static final int DEFAULT_WORKERS = 1; // Videos processed in parallel
+    public static final int VIDEO_TIMEOUT_SECONDS = 300; // Abandon a single video after this long
+    public static final int PIPELINE_RING_SIZE = 8; // Decoded frames buffered ahead of analysis in --pipeline mode
+    public static final int STRIDE_IDLE_FRAMES = 10; // Idle frames at full rate before --stride starts skipping again
+    public static final double TRACK_WINDOW_FRACTION = 0.4; // --track search window width, as a fraction of the analyzed width
+    public static final int TRACK_VELOCITY_FRAMES = 5; // Recent centroids the --track prediction averages velocity over
+    public static final int TRACK_RECHECK_FRAMES = 10; // Windowed frames before --track analyzes the whole ROI again
+    public static final int TRACK_WINDOW_STEP = 8; // --track window positions snap to this many pixels, so each position's views are made once
+
+    // Database writes
+    public static final int DB_QUEUE_CAPACITY = 256; // Results waiting to be written before processing blocks
+    public static final int DB_CONNECTIONS = 2; // Writer threads, each holding one connection open for the run
+    public static final int DB_BATCH_SIZE = 50; // Rows per JDBC batch
+    public static final int DB_FLUSH_MILLIS = 2000; // Write a partial batch after this long
+
+    // Local result log (--sink log)
+    public static final String RESULT_LOG_DIR = "results-log";
+    public static final long RESULT_LOG_SEGMENT_BYTES = 8 * 1024 * 1024; // Start a new segment file past this size
+    public static final int RESULT_LOG_SYNC_RECORDS = 32; // fsync after this many unsynced results
+    public static final int RESULT_LOG_SYNC_MILLIS = 1000; // or once the oldest unsynced result is this old
+
+    // Resuming batches
+    public static final String PROCESSED_INDEX_FILE = "processed-index.tsv"; // Videos already done, keyed by file identity and parameters
+
+    // Watch mode
+    public static final String WATCH_FILE_PREFIX = "Road Cam "; // Only clips from the camera are picked up
+    public static final int WATCH_POLL_MILLIS = 500; // How often new and growing files are checked
+    public static final int WATCH_SETTLE_MILLIS = 2000; // A clip is complete once its size hasn't changed for this long
+    public static final int WATCH_MAX_ATTEMPTS = 3; // Tries per clip before a failing clip is left until the next start
+    public static final int WATCH_RETRY_MILLIS = 30_000; // Wait before trying a failed clip again, times the attempts so far
+
+    // Feature cache (--save-features, FeatureReplay)
+    public static final String FEATURE_FILE_SUFFIX = ".features"; // Written next to the video
+    public static final double FEATURE_MIN_AREA = 100; // Smallest contour area kept, the lowest area threshold a replay can use
     
+    // Debug output (--debug)
+    public static final String DEBUG_OUTPUT_DIR = "target";
+    public static final int DEBUG_QUEUE_CAPACITY = 16; // Annotated frames waiting to be written before processing blocks
+
     // Noise detection
     public static final int EARLY_FRAME_CUTOFF = 80;
     public static final double NOISE_THRESHOLD = 0.55; // 55% motion in early frames = too noisy
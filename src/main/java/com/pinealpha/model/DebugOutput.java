@@ -0,0 +1,6 @@
+package com.pinealpha.model;
+
+public enum DebugOutput {
+    FRAMES, // One annotated JPEG per frame, plus the motion mask while something is moving
+    VIDEO   // One annotated video per clip
+}
@@ -0,0 +1,6 @@
+package com.pinealpha.model;
+
+public enum Sink {
+    DB, // Batched inserts into the Supabase database while processing
+    LOG // Append to a local segment log, uploaded to the database separately by ResultLogUploader
+}
@@ -0,0 +1,120 @@
+package com.pinealpha.model;
+
+import java.util.*;
+
+/**
+ * The motion tracker's decision thresholds: the defaults used until a direction is detected, then the
+ * direction-specific ones. DEFAULT holds the values from Config; other instances are for replaying and tuning.
+ */
+public record TrackerThresholds(
+    double defaultMotionThreshold,
+    double defaultAreaThreshold,
+    int defaultConsecutiveFramesRequired,
+    double defaultEndMotionThreshold,
+    int defaultNoMotionFramesBeforeStop,
+    double leftToRightMotionThreshold,
+    double leftToRightAreaThreshold,
+    int leftToRightConsecutiveFramesRequired,
+    double rightToLeftMotionThreshold,
+    double rightToLeftAreaThreshold,
+    int rightToLeftConsecutiveFramesRequired,
+    double rightToLeftEndMotionThreshold,
+    int rightToLeftNoMotionFramesBeforeStop
+) {
+    public static final TrackerThresholds DEFAULT = new TrackerThresholds(
+        Config.DEFAULT_MOTION_THRESHOLD,
+        Config.DEFAULT_AREA_THRESHOLD,
+        Config.DEFAULT_CONSECUTIVE_FRAMES_REQUIRED,
+        Config.DEFAULT_END_MOTION_THRESHOLD,
+        Config.DEFAULT_NO_MOTION_FRAMES_BEFORE_STOP,
+        Config.LeftToRight.MOTION_THRESHOLD,
+        Config.LeftToRight.AREA_THRESHOLD,
+        Config.LeftToRight.CONSECUTIVE_FRAMES_REQUIRED,
+        Config.RightToLeft.MOTION_THRESHOLD,
+        Config.RightToLeft.AREA_THRESHOLD,
+        Config.RightToLeft.CONSECUTIVE_FRAMES_REQUIRED,
+        Config.RightToLeft.END_MOTION_THRESHOLD,
+        Config.RightToLeft.NO_MOTION_FRAMES_BEFORE_STOP
+    );
+
+    /**
+     * Copy with some values replaced, by component name, e.g. {"leftToRightAreaThreshold": "1000"}.
+     */
+    public TrackerThresholds with(Map<String, String> overrides) {
+        double defaultMotionThreshold = this.defaultMotionThreshold;
+        double defaultAreaThreshold = this.defaultAreaThreshold;
+        int defaultConsecutiveFramesRequired = this.defaultConsecutiveFramesRequired;
+        double defaultEndMotionThreshold = this.defaultEndMotionThreshold;
+        int defaultNoMotionFramesBeforeStop = this.defaultNoMotionFramesBeforeStop;
+        double leftToRightMotionThreshold = this.leftToRightMotionThreshold;
+        double leftToRightAreaThreshold = this.leftToRightAreaThreshold;
+        int leftToRightConsecutiveFramesRequired = this.leftToRightConsecutiveFramesRequired;
+        double rightToLeftMotionThreshold = this.rightToLeftMotionThreshold;
+        double rightToLeftAreaThreshold = this.rightToLeftAreaThreshold;
+        int rightToLeftConsecutiveFramesRequired = this.rightToLeftConsecutiveFramesRequired;
+        double rightToLeftEndMotionThreshold = this.rightToLeftEndMotionThreshold;
+        int rightToLeftNoMotionFramesBeforeStop = this.rightToLeftNoMotionFramesBeforeStop;
+        Set<String> unknown = new TreeSet<>();
+        for (Map.Entry<String, String> override : overrides.entrySet()) {
+            String name = override.getKey();
+            String value = override.getValue();
+            switch (name) {
+                case "defaultMotionThreshold" -> defaultMotionThreshold = parseDouble(name, value);
+                case "defaultAreaThreshold" -> defaultAreaThreshold = parseDouble(name, value);
+                case "defaultConsecutiveFramesRequired" -> defaultConsecutiveFramesRequired = parseInt(name, value);
+                case "defaultEndMotionThreshold" -> defaultEndMotionThreshold = parseDouble(name, value);
+                case "defaultNoMotionFramesBeforeStop" -> defaultNoMotionFramesBeforeStop = parseInt(name, value);
+                case "leftToRightMotionThreshold" -> leftToRightMotionThreshold = parseDouble(name, value);
+                case "leftToRightAreaThreshold" -> leftToRightAreaThreshold = parseDouble(name, value);
+                case "leftToRightConsecutiveFramesRequired" -> leftToRightConsecutiveFramesRequired = parseInt(name, value);
+                case "rightToLeftMotionThreshold" -> rightToLeftMotionThreshold = parseDouble(name, value);
+                case "rightToLeftAreaThreshold" -> rightToLeftAreaThreshold = parseDouble(name, value);
+                case "rightToLeftConsecutiveFramesRequired" -> rightToLeftConsecutiveFramesRequired = parseInt(name, value);
+                case "rightToLeftEndMotionThreshold" -> rightToLeftEndMotionThreshold = parseDouble(name, value);
+                case "rightToLeftNoMotionFramesBeforeStop" -> rightToLeftNoMotionFramesBeforeStop = parseInt(name, value);
+                default -> unknown.add(name);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown thresholds: " + unknown);
+        }
+        return new TrackerThresholds(
+            defaultMotionThreshold,
+            defaultAreaThreshold,
+            defaultConsecutiveFramesRequired,
+            defaultEndMotionThreshold,
+            defaultNoMotionFramesBeforeStop,
+            leftToRightMotionThreshold,
+            leftToRightAreaThreshold,
+            leftToRightConsecutiveFramesRequired,
+            rightToLeftMotionThreshold,
+            rightToLeftAreaThreshold,
+            rightToLeftConsecutiveFramesRequired,
+            rightToLeftEndMotionThreshold,
+            rightToLeftNoMotionFramesBeforeStop
+        );
+    }
+
+    private static double parseDouble(String name, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number, got: " + value);
+        }
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer, got: " + value);
+        }
+    }
+
+    /**
+     * Area thresholds the tracker can switch between, in the order the FFM kernel reports them.
+     */
+    public double[] areaThresholds() {
+        return new double[]{defaultAreaThreshold, leftToRightAreaThreshold, rightToLeftAreaThreshold};
+    }
+}
@@ -0,0 +1,231 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.Config;
+import com.pinealpha.model.MotionResult;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Writes motion results to the database off the processing path.
+ *
+ * Results go into a bounded queue that a few writer threads drain, each holding one connection open for the whole run
+ * and inserting with JDBC batches. A batch is written once it is full or once its oldest row has waited flushMillis.
+ * When the queue is full, submit blocks, so a slow database slows processing down instead of filling the heap.
+ * close() stops accepting results and returns once everything already queued has been written.
+ */
+public class AsyncResultWriter implements ResultSink {
+
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private record Row(MotionResult result, String videoFilename, Runnable onDurable) {
+    }
+
+    // One per writer, queued behind every real row by close()
+    private static final Row END_OF_QUEUE = new Row(null, null, null);
+
+    private final ConnectionFactory connectionFactory;
+    private final String tableName;
+    private final String insertSQL;
+    private final int batchSize;
+    private final long flushNanos;
+    private final BlockingQueue<Row> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    // Submitters share the read lock, close() takes the write lock once they're out of put()
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed = false;
+
+    public AsyncResultWriter(String... tableName) {
+        this(DatabaseManager::getConnection, DatabaseManager.getTableName(tableName),
+                Config.DB_QUEUE_CAPACITY, Config.DB_CONNECTIONS, Config.DB_BATCH_SIZE, Config.DB_FLUSH_MILLIS);
+    }
+
+    public AsyncResultWriter(ConnectionFactory connectionFactory, String tableName,
+                             int queueCapacity, int connections, int batchSize, long flushMillis) {
+        this.connectionFactory = connectionFactory;
+        this.tableName = tableName;
+        this.insertSQL = DatabaseManager.getInsertSQL(tableName);
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        for (int i = 0; i < connections; i++) {
+            Thread writer = new Thread(this::drain, "db-writer-" + i);
+            writer.setDaemon(true);
+            writers.add(writer);
+            writer.start();
+        }
+    }
+
+    /**
+     * Queue a result for writing, blocking while the queue is full. onDurable runs on the writer thread after the batch
+     * holding the row has been executed on an auto-commit connection.
+     */
+    @Override
+    public void submit(MotionResult result, String videoFilename, Runnable onDurable) throws InterruptedException {
+        // Held across put() so nothing can slip into the queue after close() has queued the end markers
+        closeLock.readLock().lockInterruptibly();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Result writer is closed");
+            }
+            queue.put(new Row(result, videoFilename, onDurable));
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        closeLock.writeLock().lockInterruptibly();
+        try {
+            if (!closed) {
+                closed = true;
+                for (int i = 0; i < writers.size(); i++) {
+                    queue.put(END_OF_QUEUE);
+                }
+            }
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        System.out.println("Result writer drained: " + written.get() + " written, " + failed.get() + " failed");
+    }
+
+    private void drain() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        Connection conn = null;
+        try {
+            boolean endOfQueue = false;
+            while (!endOfQueue) {
+                Row first = queue.take();
+                if (first == END_OF_QUEUE) {
+                    return;
+                }
+
+                // Fill the batch until it's full or the first row has waited long enough
+                batch.add(first);
+                long deadline = System.nanoTime() + flushNanos;
+                while (batch.size() < batchSize) {
+                    Row next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == END_OF_QUEUE) {
+                        endOfQueue = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                conn = flush(conn, batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            failed.addAndGet(batch.size() + queue.size());
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Write one batch, reconnecting and retrying once if the connection has gone bad. Returns the connection to keep using.
+     */
+    private Connection flush(Connection conn, List<Row> batch) {
+        long start = System.nanoTime();
+        Events.DatabaseWrite event = new Events.DatabaseWrite();
+        event.begin();
+        boolean succeeded = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    if (conn == null) {
+                        conn = connectionFactory.open();
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
+                        for (Row row : batch) {
+                            DatabaseManager.bindMotionResult(pstmt, row.result(), row.videoFilename());
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                    written.addAndGet(batch.size());
+                    succeeded = true;
+                    for (Row row : batch) {
+                        runQuietly(row.onDurable());
+                    }
+                    return conn;
+                } catch (SQLException | RuntimeException e) {
+                    closeQuietly(conn);
+                    conn = null;
+                    if (attempt == 2) {
+                        System.err.println("Error inserting " + batch.size() + " motion results: " + e.getMessage());
+                        failed.addAndGet(batch.size());
+                        return null;
+                    }
+                }
+            }
+        } finally {
+            Metrics.record(Metrics.Stage.DB_INSERT, start);
+            commitDatabaseWrite(event, batch, succeeded);
+        }
+    }
+
+    /**
+     * One event per batch, named after its first video, with frames only when the batch is a single result.
+     */
+    private void commitDatabaseWrite(Events.DatabaseWrite event, List<Row> batch, boolean succeeded) {
+        if (event.shouldCommit()) {
+            Row first = batch.getFirst();
+            event.video = batch.size() == 1 ? first.videoFilename() : first.videoFilename() + " and " + (batch.size() - 1) + " more";
+            event.firstMotionFrame = batch.size() == 1 ? first.result().firstMotionFrame() : -1;
+            event.lastMotionFrame = batch.size() == 1 ? first.result().lastMotionFrame() : -1;
+            event.table = tableName;
+            event.rows = succeeded ? batch.size() : 0;
+            event.succeeded = succeeded;
+            event.commit();
+        }
+    }
+
+    private static void runQuietly(Runnable onDurable) {
+        try {
+            onDurable.run();
+        } catch (RuntimeException e) {
+            System.err.println("Durability callback failed: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // the connection is being thrown away anyway
+        }
+    }
+}
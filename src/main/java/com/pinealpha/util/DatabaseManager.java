@@ -24,7 +24,7 @@ public class DatabaseManager {
         return DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
     }
     
-    private static String getTableName(String... tableName) {
+    static String getTableName(String... tableName) {
         return (tableName.length > 0 && tableName[0] != null) ? tableName[0] : DB_NAME;
     }
 
@@ -58,35 +58,58 @@ public class DatabaseManager {
     
     public static void insertMotionResult(MotionResult result, String videoFilename, String... tableName) {
         String actualTableName = getTableName(tableName);
-        String insertSQL = String.format("""
-            INSERT INTO %s (
-                detection_time, video_filename, first_motion_frame, 
-                last_motion_frame, has_motion,
-                direction, first_motion_time, last_motion_time, speed_mph
-            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
-            """, actualTableName);
+        String insertSQL = getInsertSQL(actualTableName);
         
+        long start = System.nanoTime();
+        Events.DatabaseWrite event = new Events.DatabaseWrite();
+        event.begin();
+        int rowsAffected = 0;
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
-            pstmt.setTimestamp(1, Timestamp.from(result.detectionTime().toInstant()));
-            pstmt.setString(2, videoFilename);
-            pstmt.setInt(3, result.firstMotionFrame());
-            pstmt.setInt(4, result.lastMotionFrame());
-            pstmt.setBoolean(5, result.hasMotion());
-            pstmt.setString(6, result.getDirection().toString());
-            pstmt.setDouble(7, result.getFirstMotionTime());
-            pstmt.setDouble(8, result.getLastMotionTime());
-            pstmt.setDouble(9, result.getSpeedMph());
-            
-            int rowsAffected = pstmt.executeUpdate();
+            bindMotionResult(pstmt, result, videoFilename);
+
+            rowsAffected = pstmt.executeUpdate();
             System.out.println("Motion result saved to " + actualTableName + " (" + rowsAffected + " row inserted)");
             
         } catch (SQLException e) {
             System.err.println("Error inserting motion result: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            Metrics.record(Metrics.Stage.DB_INSERT, start);
+            if (event.shouldCommit()) {
+                event.video = videoFilename;
+                event.firstMotionFrame = result.firstMotionFrame();
+                event.lastMotionFrame = result.lastMotionFrame();
+                event.table = actualTableName;
+                event.rows = rowsAffected;
+                event.succeeded = rowsAffected > 0;
+                event.commit();
+            }
         }
     }
     
+    static String getInsertSQL(String tableName) {
+        return String.format("""
+            INSERT INTO %s (
+                detection_time, video_filename, first_motion_frame, 
+                last_motion_frame, has_motion,
+                direction, first_motion_time, last_motion_time, speed_mph
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """, tableName);
+    }
+
+    static void bindMotionResult(PreparedStatement pstmt, MotionResult result, String videoFilename) throws SQLException {
+        pstmt.setTimestamp(1, Timestamp.from(result.detectionTime().toInstant()));
+        pstmt.setString(2, videoFilename);
+        pstmt.setInt(3, result.firstMotionFrame());
+        pstmt.setInt(4, result.lastMotionFrame());
+        pstmt.setBoolean(5, result.hasMotion());
+        pstmt.setString(6, result.getDirection().toString());
+        pstmt.setDouble(7, result.getFirstMotionTime());
+        pstmt.setDouble(8, result.getLastMotionTime());
+        pstmt.setDouble(9, result.getSpeedMph());
+    }
+
     public static void testConnection() {
         try (Connection conn = getConnection()) {
             DatabaseMetaData metaData = conn.getMetaData();
@@ -0,0 +1,173 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.videoio.VideoWriter;
+
+/**
+ * Writes --debug output for one clip off the processing path.
+ *
+ * The processing thread only annotates a copy of every --debug-every'th frame and queues it; JPEG or video encoding
+ * happens on the writer's own thread. The queue is bounded, so when the disk can't keep up, write blocks instead of
+ * filling the heap with frames. With --debug-output video, the frames go into a single video per clip instead of one
+ * JPEG each, and masks aren't written. close() returns once everything queued has been written.
+ */
+public class DebugWriter implements AutoCloseable {
+
+    private record Image(Mat image, String path) {
+    }
+
+    private static final Image END_OF_QUEUE = new Image(null, null);
+
+    private final String fileName;
+    private final Path outputDir;
+    private final DebugOutput output;
+    private final int every;
+    private final double fps;
+    private final BlockingQueue<Image> queue = new ArrayBlockingQueue<>(Config.DEBUG_QUEUE_CAPACITY);
+    private final Thread writer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private VideoWriter videoWriter; // writer thread only
+
+    public DebugWriter(String fileName, VideoInfo video, Args args) {
+        this(fileName, video, args, Path.of(Config.DEBUG_OUTPUT_DIR));
+    }
+
+    public DebugWriter(String fileName, VideoInfo video, Args args, Path outputDir) {
+        this.fileName = fileName;
+        this.outputDir = outputDir;
+        this.output = args.debugOutput();
+        this.every = args.debugEvery();
+        this.fps = video.fps() / every;
+
+        writer = new Thread(this::drain, "debug-writer-" + fileName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * True for the frames that are written, so the others don't have to be annotated.
+     */
+    public boolean wants(int frameCount) {
+        return frameCount % every == 0;
+    }
+
+    public boolean writesMasks() {
+        return output == DebugOutput.FRAMES;
+    }
+
+    /**
+     * Queue an annotated frame, and its mask if writesMasks(). Takes ownership of both Mats, mask may be null.
+     * Blocks while the queue is full.
+     */
+    public void write(int frameCount, boolean sustained, Mat annotated, Mat mask) {
+        try {
+            if (output == DebugOutput.VIDEO) {
+                queue.put(new Image(annotated, null));
+            } else {
+                queue.put(new Image(annotated, outputDir.resolve("frame_" + frameCount + (sustained ? "_sustained" : "") + ".jpg").toString()));
+            }
+            annotated = null;
+            if (mask != null && writesMasks()) {
+                queue.put(new Image(mask, outputDir.resolve("mask_" + frameCount + ".jpg").toString()));
+                mask = null;
+            }
+        } catch (InterruptedException e) {
+            // The video is being abandoned, its processing loop checks the flag
+            Thread.currentThread().interrupt();
+        } finally {
+            if (annotated != null) {
+                annotated.release();
+            }
+            if (mask != null) {
+                mask.release();
+            }
+        }
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            queue.put(END_OF_QUEUE);
+            writer.join();
+        } catch (InterruptedException e) {
+            // Abandoned video: stop writing and drop what's still queued
+            writer.interrupt();
+            for (Image image; (image = queue.poll()) != null; ) {
+                if (image.image() != null) {
+                    image.image().release();
+                }
+            }
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Debug output for " + fileName + ": " + written.get() + " images written, " + failed.get() + " failed"
+                + (output == DebugOutput.VIDEO ? " to " + videoPath() : ""));
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Image next = queue.take();
+                if (next == END_OF_QUEUE) {
+                    return;
+                }
+                try {
+                    boolean ok = next.path() != null ? Imgcodecs.imwrite(next.path(), next.image()) : writeVideoFrame(next.image());
+                    (ok ? written : failed).incrementAndGet();
+                } catch (RuntimeException e) {
+                    // e.g. CvException for a missing directory or a size the encoder won't take. Keep draining, or
+                    // write and close would block on the full queue.
+                    if (failed.getAndIncrement() == 0) {
+                        System.err.println("Debug output for " + fileName + " failed: " + e.getMessage());
+                    }
+                } finally {
+                    next.image().release();
+                }
+            }
+        } catch (InterruptedException e) {
+            // close() gave up waiting, leave the rest
+        } finally {
+            if (videoWriter != null) {
+                videoWriter.release();
+            }
+        }
+    }
+
+    /**
+     * The video is opened on the first frame, at the size the frames were annotated at.
+     */
+    private boolean writeVideoFrame(Mat image) {
+        if (videoWriter == null) {
+            videoWriter = new VideoWriter(videoPath(), VideoWriter.fourcc('m', 'p', '4', 'v'), fps, image.size(), true);
+            if (!videoWriter.isOpened()) {
+                System.err.println("Could not open " + videoPath() + " for debug output");
+            }
+        }
+        if (!videoWriter.isOpened()) {
+            return false;
+        }
+        videoWriter.write(image);
+        return true;
+    }
+
+    private String videoPath() {
+        String baseName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+        return outputDir.resolve(baseName + "_debug.mp4").toString();
+    }
+}
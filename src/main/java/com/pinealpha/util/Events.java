@@ -0,0 +1,78 @@
+package com.pinealpha.util;
+
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events for video processing. Every event carries the video filename, and the frame index where
+ * there is one, so a recording of a production batch lines up with the CPU and GC views in JMC.
+ *
+ * Fields are only filled in after shouldCommit(), so a disabled event costs a timestamp and nothing else.
+ */
+public class Events {
+
+    @Name("com.pinealpha.VideoOpen")
+    @Label("Video Open")
+    @Category({"Speedcam", "Video"})
+    @Description("Opening a clip and reading its container properties")
+    @StackTrace(false)
+    public static final class VideoOpen extends Event {
+        @Label("Video") public String video;
+        @Label("Backend") public String backend;
+        @Label("Width") public int width;
+        @Label("Height") public int height;
+        @Label("FPS") public double fps;
+        @Label("Total Frames") public int totalFrames;
+    }
+
+    @Name("com.pinealpha.FrameAnalysis")
+    @Label("Frame Analysis")
+    @Category({"Speedcam", "Frame"})
+    @Description("Motion analysis and tracker update for one frame")
+    @StackTrace(false)
+    public static final class FrameAnalysis extends Event {
+        @Label("Video") public String video;
+        @Label("Frame") public int frame;
+        @Label("Motion %") public double motionPercentage;
+        @Label("Largest Contour Area") public double largestContourArea;
+        @Label("Significant Contours") public int significantContours;
+        @Label("Tracker State") public String state;
+    }
+
+    @Name("com.pinealpha.DirectionDecision")
+    @Label("Direction Decision")
+    @Category({"Speedcam", "Tracker"})
+    @Description("Sustained motion started and the direction-specific thresholds were picked")
+    @StackTrace(false)
+    public static final class DirectionDecision extends Event {
+        @Label("Video") public String video;
+        @Label("Frame") public int frame;
+        @Label("Direction") public String direction;
+        @Label("First Motion X") public double firstMotionX;
+    }
+
+    @Name("com.pinealpha.NoiseRejection")
+    @Label("Noise Rejection")
+    @Category({"Speedcam", "Tracker"})
+    @Description("Clip rejected because too many early frames had motion")
+    @StackTrace(false)
+    public static final class NoiseRejection extends Event {
+        @Label("Video") public String video;
+        @Label("Frame") public int frame;
+        @Label("Early Motion Ratio") public double earlyMotionRatio;
+        @Label("Noise Threshold") public double noiseThreshold;
+    }
+
+    @Name("com.pinealpha.DatabaseWrite")
+    @Label("Database Write")
+    @Category({"Speedcam", "Database"})
+    @Description("Inserting one motion result, or one batch of them from the async writer")
+    @StackTrace(false)
+    public static final class DatabaseWrite extends Event {
+        @Label("Video") public String video;
+        @Label("First Motion Frame") public int firstMotionFrame;
+        @Label("Last Motion Frame") public int lastMotionFrame;
+        @Label("Table") public String table;
+        @Label("Rows") public int rows;
+        @Label("Succeeded") public boolean succeeded;
+    }
+}
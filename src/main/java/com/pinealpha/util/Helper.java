@@ -3,79 +3,193 @@ package com.pinealpha.util;
 import com.pinealpha.model.*;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Arrays;
+import java.util.StringJoiner;
 import java.time.format.DateTimeFormatter;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.core.MatOfPoint;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
 import java.util.ArrayList;
 
 public class Helper {
 
     public static Args parseArgs(String[] args) {
-        String videoPath = null;
-        boolean debug = false;
+        if (Arrays.asList(args).contains("--help") || Arrays.asList(args).contains("-h")) {
+            Args.printUsage();
+            System.exit(0);
+        }
+
+        Args parsed = null;
+        try {
+            parsed = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            Args.printUsage();
+            System.exit(1);
+        }
+
+        if (parsed.servePort() > 0) {
+            System.out.println("Serving on port: " + parsed.servePort());
+        } else {
+            System.out.println("Processing: " + parsed.videoPath());
+        }
+        if (parsed.debug()) {
+            System.out.println("Debug mode: ENABLED");
+        }
+        if (parsed.workers() > 1) {
+            System.out.println("Workers: " + parsed.workers());
+        }
+        return parsed;
+    }
+
+    /**
+     * Same options as the command line, throwing IllegalArgumentException instead of exiting. SpeedServer parses
+     * its jobs with this.
+     */
+    public static Args parse(String[] args) {
+        Args.Builder parsed = Args.builder(null);
 
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
                 case "--in" -> {
                     if (i + 1 < args.length) {
-                        videoPath = args[++i];
+                        parsed.videoPath(args[++i]);
                     } else {
-                        System.err.println("Error: --in requires a video path argument");
-                        Args.printUsage();
-                        System.exit(1);
+                        throw new IllegalArgumentException("--in requires a video path argument");
                     }
                 }
-                case "--debug" -> debug = true;
-                case "--help", "-h" -> {
-                    Args.printUsage();
-                    System.exit(0);
-                }
-                default -> {
-                    System.err.println("Unknown argument: " + args[i]);
-                    Args.printUsage();
-                    System.exit(1);
-                }
+                case "--debug" -> parsed.debug(true);
+                case "--debug-every" -> parsed.debugEvery(parsePositiveInt(args, ++i, "--debug-every"));
+                case "--debug-output" -> parsed.debugOutput(parseEnum(DebugOutput.class, args, ++i, "--debug-output"));
+                case "--workers" -> parsed.workers(parsePositiveInt(args, ++i, "--workers"));
+                case "--timeout" -> parsed.videoTimeoutSeconds(parsePositiveInt(args, ++i, "--timeout"));
+                case "--pipeline" -> parsed.pipelined(true);
+                case "--roi-crop" -> parsed.roiCrop(true);
+                case "--scale" -> parsed.scale(parseScale(args, ++i));
+                case "--stride" -> parsed.stride(parsePositiveInt(args, ++i, "--stride"));
+                case "--backend" -> parsed.backend(parseEnum(Backend.class, args, ++i, "--backend"));
+                case "--metrics-interval" -> parsed.metricsIntervalSeconds(parsePositiveInt(args, ++i, "--metrics-interval"));
+                case "--sink" -> parsed.sink(parseEnum(Sink.class, args, ++i, "--sink"));
+                case "--no-resume" -> parsed.resume(false);
+                case "--watch" -> parsed.watch(true);
+                case "--stream" -> parsed.stream(true);
+                case "--save-features" -> parsed.saveFeatures(true);
+                case "--gray" -> parsed.grayscale(true);
+                case "--bg" -> parsed.backgroundEngine(parseEnum(BackgroundEngine.class, args, ++i, "--bg"));
+                case "--components" -> parsed.components(true);
+                case "--track" -> parsed.track(true);
+                case "--serve" -> parsed.servePort(parsePort(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
             }
         }
         
         // Validate required arguments
-        if (videoPath == null) {
-            System.err.println("Error: Video path is required");
-            Args.printUsage();
-            System.exit(1);
+        Args result = parsed.build();
+        if (result.videoPath() == null && result.servePort() == 0) {
+            throw new IllegalArgumentException("Video path is required");
+        }
+        if (result.stride() > 1 && result.pipelined()) {
+            throw new IllegalArgumentException("--stride seeks back and forth in the clip, it can't be combined with --pipeline");
         }
 
-        System.out.println("Processing: " + videoPath);
-        if (debug) {
-            System.out.println("Debug mode: ENABLED");
+        return result;
+    }
+
+    /**
+     * The value of option name at args[i]. The parse helpers below are shared by the other entry points' own options.
+     */
+    public static String parseValue(String[] args, int i, String name) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(name + " requires an argument");
+        }
+        return args[i];
+    }
+
+    public static int parsePositiveInt(String[] args, int i, String name) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(name + " requires a numeric argument");
+        }
+        try {
+            int value = Integer.parseInt(args[i]);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException(name + " must be a positive integer, got: " + args[i]);
+    }
+
+    public static int parsePort(String[] args, int i) {
+        int port = parsePositiveInt(args, i, "--serve");
+        if (port > 65535) {
+            throw new IllegalArgumentException("--serve must be a port number, got: " + args[i]);
         }
+        return port;
+    }
 
-        return new Args(videoPath, debug);
+    public static double parseScale(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("--scale requires a numeric argument");
+        }
+        try {
+            double value = Double.parseDouble(args[i]);
+            if (value > 0 && value <= 1.0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("--scale must be greater than 0 and at most 1, got: " + args[i]);
     }
 
-    public static void writeImageToFile(Mat frame, String filename, List<MatOfPoint> polygons, List<MatOfPoint> largeContours) {
-        Mat frameWithROI = frame.clone();
+    /**
+     * Case-insensitive enum constant, e.g. "ffm" for Backend.FFM.
+     */
+    public static <E extends Enum<E>> E parseEnum(Class<E> type, String[] args, int i, String name) {
+        if (i < args.length) {
+            for (E value : type.getEnumConstants()) {
+                if (value.name().equalsIgnoreCase(args[i])) {
+                    return value;
+                }
+            }
+        }
+        StringJoiner names = new StringJoiner(", ");
+        for (E value : type.getEnumConstants()) {
+            names.add(value.name().toLowerCase());
+        }
+        throw new IllegalArgumentException(name + " must be one of " + names);
+    }
 
+    /**
+     * Draw the road polygon in red and large contours in green onto the image, in place.
+     */
+    public static void drawOverlay(Mat image, List<MatOfPoint> polygons, List<MatOfPoint> largeContours) {
         if (polygons != null) {
-            Imgproc.polylines(frameWithROI, polygons, true, new Scalar(0, 0, 255), 3);
+            Imgproc.polylines(image, polygons, true, new Scalar(0, 0, 255), 3);
         }
         
         if (largeContours != null) {
-            Imgproc.drawContours(frameWithROI, largeContours, -1, new Scalar(0, 255, 0), 2);
+            Imgproc.drawContours(image, largeContours, -1, new Scalar(0, 255, 0), 2);
         }
-        
-        Imgcodecs.imwrite(filename, frameWithROI);
-        frameWithROI.release();
+    }
+
+    /**
+     * With --gray or --bg vector, ask the decoder to skip the YUV to BGR conversion. Backends that honor it return the luma plane
+     * (or the raw planar frame, luma first), the others still return BGR and FrameAnalyzer converts it.
+     */
+    public static VideoCapture openVideo(String videoPath, Args args) {
+        VideoCapture cap = new VideoCapture(videoPath);
+        if (args.grayscale() || args.backgroundEngine() == BackgroundEngine.VECTOR) {
+            cap.set(Videoio.CAP_PROP_CONVERT_RGB, 0);
+        }
+        return cap;
     }
 
     public static void printVideoProperties(VideoInfo video) {
@@ -104,40 +218,18 @@ public class Helper {
 
     }
 
-    public static void extractLibrary(String resourcePath, Path destination) throws IOException {
-        try (InputStream in = Helper.class.getClassLoader().getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                throw new FileNotFoundException("Missing resource: " + resourcePath);
-            }
-            Files.copy(in, destination, StandardCopyOption.REPLACE_EXISTING);
-            destination.toFile().deleteOnExit();
-            destination.toFile().setExecutable(true, false);
-        }
-    }
-
+    /**
+     * libcvwrapper and the OpenCV modules it links against, see NativeLoader.
+     */
     public static void loadNativeOpenCV() throws Throwable {
-        List<String> libraries = List.of(
-                "libopencv_core.412.dylib",
-                "libopencv_imgcodecs.412.dylib",
-                "libopencv_objdetect.412.dylib",
-                "libopencv_imgproc.412.dylib",
-                "libcvwrapper.dylib"
-        );
-
-        // Extract all native libraries to temp dir
-        Path tempDir = Files.createTempDirectory("native-libs");
-        tempDir.toFile().deleteOnExit();
-        for (String lib : libraries) {
-            Helper.extractLibrary("native/" + lib, tempDir.resolve(lib));
-        }
-
-        // Add extracted dir to library path for OpenCV dependencies
-        System.setProperty("java.library.path", tempDir.toString());
-        System.load(tempDir.resolve("libcvwrapper.dylib").toString());
+        NativeLoader.loadWrapper();
     }
 
+    /**
+     * OpenCV's Java bindings and the modules they link against, see NativeLoader.
+     */
     public static void loadJNIOpenCV() throws IOException {
-        System.load(extractResource("/native/libopencv_java4120.dylib").getAbsolutePath());
+        NativeLoader.loadJni();
     }
 
     public static List<String> getVideoPaths(String path) {
@@ -160,13 +252,7 @@ public class Helper {
             return List.of(directoryPath);
         }
         
-        // Common video file extensions
-        String[] videoExtensions = {".mp4", ".avi", ".mov", ".mkv", ".wmv", ".flv", ".webm"};
-        
-        File[] files = dir.listFiles((dir1, name) -> {
-            String lowerName = name.toLowerCase();
-            return Arrays.stream(videoExtensions).anyMatch(lowerName::endsWith);
-        });
+        File[] files = dir.listFiles((dir1, name) -> isVideoFile(name));
         
         if (files == null || files.length == 0) {
             System.out.println("No video files found in directory: " + directoryPath);
@@ -186,6 +272,13 @@ public class Helper {
         return videoPaths;
     }
 
+    public static boolean isVideoFile(String name) {
+        // Common video file extensions
+        String[] videoExtensions = {".mp4", ".avi", ".mov", ".mkv", ".wmv", ".flv", ".webm"};
+        String lowerName = name.toLowerCase();
+        return Arrays.stream(videoExtensions).anyMatch(lowerName::endsWith);
+    }
+
     public static ZonedDateTime parseDateTimeFromFilename(String fileName) {
         var str = fileName.replace("Road Cam ", "");
         str = str.split(" - ")[0];
@@ -0,0 +1,91 @@
+package com.pinealpha.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free nanosecond latency histogram that is cheap enough to record into from every frame on every worker.
+ *
+ * Buckets are log-linear: 4 buckets per power of two, so any percentile is reported to within 25% of the real value
+ * with a fixed 248-slot array and no allocation per recorded value.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double meanNanos() {
+        long n = count.sum();
+        return n > 0 ? (double) totalNanos.sum() / n : 0;
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0-100), capped at the largest recorded value.
+     */
+    public long percentileNanos(double percentile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxNanos());
+            }
+        }
+        return maxNanos();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,66 @@
+package com.pinealpha.util;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Shares pixel memory between OpenCV Mats and FFM MemorySegments without copying, in both directions.
+ *
+ * A segment from of(Mat) is only valid while the Mat's data is: releasing the Mat, or anything that reallocates it
+ * (read, create with another size or type), leaves the segment pointing at freed memory. A Mat from wrap(...) does
+ * not own its pixels, so the segment's arena must stay open for as long as the Mat is used.
+ */
+public class MatSegments {
+
+    /**
+     * The Mat's pixels from the first byte of its first row to the last byte of its last row, bounded so Java reads
+     * and native calls can't run past the Mat. Rows are rowStride(mat) bytes apart; a submat's rows aren't
+     * contiguous, so the segment also spans the parent's pixels between them.
+     */
+    public static MemorySegment of(Mat mat) {
+        if (mat.empty() || mat.dims() != 2) {
+            throw new IllegalArgumentException("Expected a non-empty 2D Mat, got " + mat);
+        }
+        long size = (mat.rows() - 1) * rowStride(mat) + mat.cols() * mat.elemSize();
+        return MemorySegment.ofAddress(mat.dataAddr()).reinterpret(size);
+    }
+
+    /**
+     * Bytes from the start of one row to the start of the next.
+     */
+    public static long rowStride(Mat mat) {
+        return mat.step1(0) * mat.elemSize1();
+    }
+
+    /**
+     * A continuous rows x cols Mat whose pixels live in the arena.
+     */
+    public static Mat allocate(Arena arena, int rows, int cols, int type) {
+        long rowStride = (long) cols * CvType.ELEM_SIZE(type);
+        return wrap(arena.allocate(rows * rowStride, Long.BYTES), rows, cols, type, rowStride);
+    }
+
+    public static Mat wrap(MemorySegment segment, int rows, int cols, int type) {
+        return wrap(segment, rows, cols, type, (long) cols * CvType.ELEM_SIZE(type));
+    }
+
+    /**
+     * A Mat over the segment's memory, rows rowStride bytes apart. The segment must be native, e.g. from an
+     * Arena, since OpenCV can't address the Java heap.
+     */
+    public static Mat wrap(MemorySegment segment, int rows, int cols, int type, long rowStride) {
+        long rowBytes = (long) cols * CvType.ELEM_SIZE(type);
+        if (!segment.isNative()) {
+            throw new IllegalArgumentException("Only native segments can back a Mat");
+        }
+        if (rows <= 0 || cols <= 0 || rowStride < rowBytes || segment.byteSize() < (rows - 1) * rowStride + rowBytes) {
+            throw new IllegalArgumentException("Segment of " + segment.byteSize() + " bytes can't hold " + rows + " rows of "
+                    + rowBytes + " bytes, " + rowStride + " bytes apart");
+        }
+        // asByteBuffer is a direct buffer over the same memory, which OpenCV uses in place
+        return new Mat(rows, cols, type, segment.asByteBuffer(), rowStride);
+    }
+}
@@ -0,0 +1,179 @@
+package com.pinealpha.util;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide hot-path telemetry: a latency histogram per pipeline stage plus frame and video counters.
+ *
+ * Recording is a couple of nanoTime calls and lock-free adds, so it stays on for every run. Reporters get a snapshot
+ * at the end of processVideos and, with --metrics-interval, periodically during long batches.
+ */
+public class Metrics {
+
+    public enum Stage {
+        DECODE,
+        BG_SUBTRACT,
+        MASK,
+        MORPHOLOGY,
+        CONTOURS,
+        DB_INSERT
+    }
+
+    @FunctionalInterface
+    public interface Reporter {
+        /**
+         * Called with cumulative numbers since the run started. finalReport is true for the end-of-run summary.
+         */
+        void report(Snapshot snapshot, boolean finalReport);
+    }
+
+    public record StageSnapshot(Stage stage, long count, double meanMicros, double p50Micros, double p90Micros,
+                                double p99Micros, double maxMicros) {
+    }
+
+    public record Snapshot(Duration elapsed, long frames, long videos, List<StageSnapshot> stages) {
+
+        public double framesPerSecond() {
+            return elapsed.toNanos() > 0 ? frames / (elapsed.toNanos() / 1e9) : 0;
+        }
+
+        public double videosPerHour() {
+            return elapsed.toNanos() > 0 ? videos / (elapsed.toNanos() / 3.6e12) : 0;
+        }
+    }
+
+    private static final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private static final LongAdder frames = new LongAdder();
+    private static final LongAdder videos = new LongAdder();
+    private static final List<Reporter> reporters = new CopyOnWriteArrayList<>(List.of(Metrics::printReport));
+
+    private static volatile long startNanos = System.nanoTime();
+    private static ScheduledExecutorService periodic;
+    private static int runs; // start() calls not yet matched by finish()
+
+    static {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Record the time since startNanos against a stage. Returns the current nanoTime so consecutive stages can chain:
+     * t = Metrics.record(Stage.MASK, t);
+     */
+    public static long record(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        histograms.get(stage).record(now - startNanos);
+        return now;
+    }
+
+    public static void countFrames(int count) {
+        frames.add(count);
+    }
+
+    public static void countVideo() {
+        videos.increment();
+    }
+
+    public static void addReporter(Reporter reporter) {
+        reporters.add(reporter);
+    }
+
+    public static void removeReporter(Reporter reporter) {
+        reporters.remove(reporter);
+    }
+
+    /**
+     * Reset all numbers and, if intervalSeconds is positive, start reporting on a background thread at that interval.
+     * Runs that overlap, e.g. processVideos calls on several threads, share the first run's numbers and interval
+     * instead of resetting each other; nothing is reset until every one of them has called finish().
+     */
+    public static synchronized void start(int intervalSeconds) {
+        if (runs++ > 0) {
+            return;
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        frames.reset();
+        videos.reset();
+        startNanos = System.nanoTime();
+
+        if (intervalSeconds > 0) {
+            periodic = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            periodic.scheduleAtFixedRate(() -> report(false), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stop periodic reporting and hand the end-of-run summary to every reporter, once the last overlapping run finishes.
+     */
+    public static synchronized void finish() {
+        if (runs == 0 || --runs > 0) {
+            return;
+        }
+        stopPeriodic();
+        report(true);
+    }
+
+    private static void stopPeriodic() {
+        if (periodic != null) {
+            periodic.shutdownNow();
+            periodic = null;
+        }
+    }
+
+    private static void report(boolean finalReport) {
+        Snapshot snapshot = snapshot();
+        for (Reporter reporter : reporters) {
+            try {
+                reporter.report(snapshot, finalReport);
+            } catch (RuntimeException e) {
+                System.err.println("Metrics reporter failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public static Snapshot snapshot() {
+        List<StageSnapshot> stages = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms.get(stage);
+            stages.add(new StageSnapshot(
+                    stage,
+                    histogram.count(),
+                    histogram.meanNanos() / 1000.0,
+                    histogram.percentileNanos(50) / 1000.0,
+                    histogram.percentileNanos(90) / 1000.0,
+                    histogram.percentileNanos(99) / 1000.0,
+                    histogram.maxNanos() / 1000.0
+            ));
+        }
+        return new Snapshot(Duration.ofNanos(System.nanoTime() - startNanos), frames.sum(), videos.sum(), stages);
+    }
+
+    private static void printReport(Snapshot snapshot, boolean finalReport) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%n---- METRICS %s (%.1fs) ----%n", finalReport ? "SUMMARY" : "SO FAR", snapshot.elapsed().toMillis() / 1000.0));
+        report.append(String.format("Videos: %d (%.1f/hour)  Frames: %d (%.1f/sec)%n",
+                snapshot.videos(), snapshot.videosPerHour(), snapshot.frames(), snapshot.framesPerSecond()));
+        report.append(String.format("%-12s %10s %10s %10s %10s %10s %10s%n", "stage (µs)", "count", "mean", "p50", "p90", "p99", "max"));
+        for (StageSnapshot stage : snapshot.stages()) {
+            if (stage.count() == 0) {
+                continue;
+            }
+            report.append(String.format("%-12s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    stage.stage(), stage.count(), stage.meanMicros(), stage.p50Micros(), stage.p90Micros(), stage.p99Micros(), stage.maxMicros()));
+        }
+        System.out.print(report);
+    }
+}
@@ -0,0 +1,218 @@
+package com.pinealpha.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Extracts the native libraries bundled for this OS and architecture into a persistent cache, and loads them.
+ *
+ * Each library is looked up under native/<os>-<arch>/ (e.g. native/linux-x86_64/, where build.sh puts its output), and
+ * on macOS ARM64 also under native/, which holds the checked in build for it. Everything found is extracted into one
+ * directory named by a checksum of the whole set, so the libraries' @loader_path and $ORIGIN lookups find each other,
+ * later runs of the same build skip the copy entirely, and a new build gets a new directory. Checksums come from the
+ * jar's own entry CRCs where possible, so an unchanged cache costs no decompression.
+ *
+ * OpenCV's modules are loaded before the library that links against them, in dependency order; modules that aren't
+ * bundled are left to the dynamic linker, e.g. the system OpenCV on Linux. The cache lives in ~/.cache/speedcam/native
+ * unless -Dspeedcam.native.cache points elsewhere.
+ */
+public class NativeLoader {
+
+    public enum Os {
+        MACOS, // .dylib, e.g. libopencv_core.412.dylib
+        LINUX  // .so, e.g. libopencv_core.so.412
+    }
+
+    public record Platform(Os os, String arch) {
+
+        public static Platform current() throws IOException {
+            return of(System.getProperty("os.name"), System.getProperty("os.arch"));
+        }
+
+        /**
+         * From the os.name and os.arch system property values.
+         */
+        static Platform of(String osName, String osArch) throws IOException {
+            String name = osName.toLowerCase(Locale.ROOT);
+            Os os = name.startsWith("mac") ? Os.MACOS : name.startsWith("linux") ? Os.LINUX : null;
+            String arch = switch (osArch) {
+                case "aarch64", "arm64" -> "arm64";
+                case "amd64", "x86_64" -> "x86_64";
+                default -> null;
+            };
+            if (os == null || arch == null) {
+                throw new IOException("No native OpenCV build for " + osName + " " + osArch);
+            }
+            return new Platform(os, arch);
+        }
+
+        public String id() {
+            return os.name().toLowerCase(Locale.ROOT) + "-" + arch;
+        }
+
+        public String module(String module) {
+            return os == Os.MACOS ? "libopencv_" + module + "." + OPENCV_SOVERSION + ".dylib" : "libopencv_" + module + ".so." + OPENCV_SOVERSION;
+        }
+
+        public String jni() {
+            return "libopencv_java" + OPENCV_VERSION + (os == Os.MACOS ? ".dylib" : ".so");
+        }
+
+        public String wrapper() {
+            return os == Os.MACOS ? "libcvwrapper.dylib" : "libcvwrapper.so";
+        }
+    }
+
+    private static final String OPENCV_VERSION = "4120";
+    private static final String OPENCV_SOVERSION = "412";
+    // Each module only links against the ones before it
+    private static final List<String> MODULES = List.of("core", "imgproc", "imgcodecs", "videoio", "video", "objdetect");
+    // What the checked in libraries directly under native/ were built for
+    private static final Platform LEGACY_PLATFORM = new Platform(Os.MACOS, "arm64");
+
+    private static Path cacheDir;
+    private static final Set<String> loaded = new HashSet<>();
+
+    /**
+     * OpenCV's Java bindings, for org.opencv.* classes.
+     */
+    public static synchronized void loadJni() throws IOException {
+        load(Platform.current().jni());
+    }
+
+    /**
+     * libcvwrapper, for FFM downcalls through SymbolLookup.loaderLookup().
+     */
+    public static synchronized void loadWrapper() throws IOException {
+        load(Platform.current().wrapper());
+    }
+
+    private static void load(String library) throws IOException {
+        Platform platform = Platform.current();
+        Map<String, URL> bundled = bundled(platform, NativeLoader.class.getClassLoader());
+        if (!bundled.containsKey(library)) {
+            throw new FileNotFoundException("No " + library + " bundled for " + platform.id() + ", see native/build.sh");
+        }
+        Path dir = extract(platform, bundled);
+
+        for (String module : MODULES) {
+            String name = platform.module(module);
+            if (bundled.containsKey(name)) {
+                loadOnce(dir, name);
+            }
+        }
+        loadOnce(dir, library);
+    }
+
+    private static void loadOnce(Path dir, String name) {
+        if (!loaded.contains(name)) {
+            System.load(dir.resolve(name).toString());
+            loaded.add(name);
+        }
+    }
+
+    /**
+     * Every library bundled for the platform, by file name, preferring the platform's own directory. native/ only
+     * counts for the platform it was built for, its dylibs would fail to load on macOS x86_64 with a less useful error.
+     */
+    static Map<String, URL> bundled(Platform platform, ClassLoader classLoader) {
+        List<String> names = new ArrayList<>();
+        for (String module : MODULES) {
+            names.add(platform.module(module));
+        }
+        names.add(platform.jni());
+        names.add(platform.wrapper());
+
+        Map<String, URL> bundled = new LinkedHashMap<>();
+        for (String name : names) {
+            URL resource = classLoader.getResource("native/" + platform.id() + "/" + name);
+            if (resource == null && platform.equals(LEGACY_PLATFORM)) {
+                resource = classLoader.getResource("native/" + name);
+            }
+            if (resource != null) {
+                bundled.put(name, resource);
+            }
+        }
+        return bundled;
+    }
+
+    /**
+     * The cache directory for this set of libraries, copying in any that aren't there yet. Files are written under a
+     * temporary name and moved into place, so a file with the final name is always complete, even with several JVMs
+     * extracting at once.
+     */
+    private static Path extract(Platform platform, Map<String, URL> bundled) throws IOException {
+        if (cacheDir != null) {
+            return cacheDir;
+        }
+        Path dir = cacheRoot().resolve(platform.id() + "-" + checksum(bundled));
+        Files.createDirectories(dir);
+        for (Map.Entry<String, URL> library : bundled.entrySet()) {
+            Path target = dir.resolve(library.getKey());
+            if (Files.exists(target)) {
+                continue;
+            }
+            Path temp = Files.createTempFile(dir, library.getKey(), ".tmp");
+            try (InputStream in = library.getValue().openStream()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+                temp.toFile().setExecutable(true, false);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        cacheDir = dir;
+        return dir;
+    }
+
+    private static Path cacheRoot() {
+        String configured = System.getProperty("speedcam.native.cache");
+        return configured != null ? Paths.get(configured) : Paths.get(System.getProperty("user.home"), ".cache", "speedcam", "native");
+    }
+
+    /**
+     * First 16 hex digits of a SHA-256 over every library's name and CRC-32.
+     */
+    static String checksum(Map<String, URL> bundled) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, URL> library : bundled.entrySet()) {
+                digest.update((library.getKey() + ":" + crc(library.getValue()) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * From the jar entry when running from a jar, otherwise computed from the file, e.g. target/classes in tests.
+     */
+    private static long crc(URL resource) throws IOException {
+        URLConnection connection = resource.openConnection();
+        if (connection instanceof JarURLConnection jar && jar.getJarEntry().getCrc() != -1) {
+            return jar.getJarEntry().getCrc();
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,223 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Persistent record of which videos have already been processed, so a crashed or repeated batch picks up where it
+ * left off instead of starting over.
+ *
+ * A video counts as done when its path, size and modification time match, and so does the fingerprint of every Config
+ * constant plus the options that change results (--scale, --roi-crop, --stride, --backend, --gray, --bg, --components, --track). If the clip or the
+ * parameters change, it is processed again. Wraps the run's ResultSink and appends one line per result from the
+ * sink's durability callback, so a crash before the result is committed or synced leaves the video to be done again.
+ */
+public class ProcessedIndex implements ResultSink {
+
+    private static final String SEPARATOR = "\t";
+    private static final int FIELDS = 14;
+
+    private final ResultSink sink;
+    private final String fingerprint;
+    private final Map<String, MotionResult> done = new HashMap<>();
+    private final Map<String, MotionResult> pending = new HashMap<>(); // submitted, not durable yet
+    private final Map<String, MotionResult> thisRun = new HashMap<>(); // submitted since the index was opened
+    private final BufferedWriter out;
+
+    public ProcessedIndex(Path file, String fingerprint, ResultSink sink) throws IOException {
+        this.sink = sink;
+        this.fingerprint = fingerprint;
+        boolean tornTail = false;
+        if (Files.exists(file)) {
+            load(file);
+            tornTail = endsMidLine(file);
+        }
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (tornTail) {
+            // End the line a crash cut short, so the first new line isn't glued onto it
+            out.newLine();
+            out.flush();
+        }
+    }
+
+    /**
+     * The earlier result for this video, or null if it hasn't been processed with the current clip and parameters.
+     * Includes results submitted in this run that the sink hasn't made durable yet, they're on their way.
+     */
+    public synchronized MotionResult lookup(String videoPath) throws IOException {
+        String key = key(videoPath);
+        MotionResult result = done.get(key);
+        return result != null ? result : pending.get(key);
+    }
+
+    /**
+     * Like lookup, but only for results submitted since this index was opened, for runs that don't resume.
+     */
+    public synchronized MotionResult lookupThisRun(String videoPath) throws IOException {
+        return thisRun.get(key(videoPath));
+    }
+
+    public synchronized int size() {
+        return done.size();
+    }
+
+    /**
+     * Hand the result to the sink and mark the video done once the sink says it's durable. Not synchronized while the
+     * sink blocks: its callback takes this lock, and ResultLog runs callbacks while holding its own.
+     */
+    @Override
+    public void submit(MotionResult result, String videoPath, Runnable onDurable) throws IOException, InterruptedException {
+        String key = key(videoPath);
+        synchronized (this) {
+            pending.put(key, result);
+            thisRun.put(key, result);
+        }
+        try {
+            sink.submit(result, videoPath, () -> {
+                markDone(key, result);
+                onDurable.run();
+            });
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            synchronized (this) {
+                pending.remove(key);
+                thisRun.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void markDone(String key, MotionResult result) {
+        pending.remove(key);
+        done.put(key, result);
+        VideoInfo video = result.video();
+        try {
+            out.write(String.join(SEPARATOR,
+                    key,
+                    Double.toString(video.fps()),
+                    Integer.toString(video.frameWidth()),
+                    Integer.toString(video.frameHeight()),
+                    Integer.toString(video.totalFrames()),
+                    result.detectionTime() != null ? result.detectionTime().toString() : "-",
+                    Integer.toString(result.totalFramesProcessed()),
+                    Integer.toString(result.firstMotionFrame()),
+                    Integer.toString(result.lastMotionFrame()),
+                    Double.toString(result.firstMotionX()),
+                    Boolean.toString(result.isRejected())));
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            // Only costs reprocessing the video on the next run
+            System.err.println("Error updating the processed index: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        try {
+            sink.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void load(Path file) throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(SEPARATOR, -1);
+            // A line cut short by a crash, or written with other parameters, doesn't count
+            if (fields.length != FIELDS || !fields[3].equals(fingerprint)) {
+                continue;
+            }
+            try {
+                VideoInfo video = new VideoInfo(Double.parseDouble(fields[4]), Integer.parseInt(fields[5]),
+                        Integer.parseInt(fields[6]), Integer.parseInt(fields[7]));
+                MotionResult result = new MotionResult(
+                        video,
+                        fields[8].equals("-") ? null : ZonedDateTime.parse(fields[8]),
+                        Integer.parseInt(fields[9]),
+                        Integer.parseInt(fields[10]),
+                        Integer.parseInt(fields[11]),
+                        Double.parseDouble(fields[12]),
+                        Boolean.parseBoolean(fields[13]));
+                done.put(String.join(SEPARATOR, fields[0], fields[1], fields[2], fields[3]), result);
+            } catch (RuntimeException e) {
+                // skip a malformed line
+            }
+        }
+    }
+
+    private static boolean endsMidLine(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            return channel.size() > 0 && channel.read(last, channel.size() - 1) == 1 && last.get(0) != '\n';
+        }
+    }
+
+    /**
+     * path, size, modification time and parameter fingerprint
+     */
+    private String key(String videoPath) throws IOException {
+        Path path = Path.of(videoPath).toAbsolutePath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return String.join(SEPARATOR, path.toString(), Long.toString(attributes.size()),
+                Long.toString(attributes.lastModifiedTime().toMillis()), fingerprint);
+    }
+
+    /**
+     * Hash of every constant in Config and its nested classes, the road polygon, and the options that affect results.
+     */
+    public static String fingerprint(Args args) {
+        StringBuilder parameters = new StringBuilder();
+        appendConstants(Config.class, parameters);
+        parameters.append("roadPoints=").append(Config.getRoadPoints(3840)).append('\n');
+        parameters.append("scale=").append(args.scale()).append('\n');
+        parameters.append("roiCrop=").append(args.roiCrop()).append('\n');
+        parameters.append("stride=").append(args.stride()).append('\n');
+        parameters.append("backend=").append(args.backend()).append('\n');
+        parameters.append("grayscale=").append(args.grayscale()).append('\n');
+        parameters.append("backgroundEngine=").append(args.backgroundEngine()).append('\n');
+        parameters.append("components=").append(args.components()).append('\n');
+        parameters.append("track=").append(args.track()).append('\n');
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(parameters.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void appendConstants(Class<?> type, StringBuilder parameters) {
+        List<Field> fields = new ArrayList<>(Arrays.asList(type.getDeclaredFields()));
+        fields.sort(Comparator.comparing(Field::getName));
+        for (Field field : fields) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)) {
+                try {
+                    parameters.append(type.getSimpleName()).append('.').append(field.getName())
+                            .append('=').append(field.get(null)).append('\n');
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Can't read " + field, e);
+                }
+            }
+        }
+        List<Class<?>> nested = new ArrayList<>(Arrays.asList(type.getDeclaredClasses()));
+        nested.sort(Comparator.comparing(Class::getName));
+        for (Class<?> inner : nested) {
+            appendConstants(inner, parameters);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only log of motion results, so a run never waits on or fails because of the remote database.
+ *
+ * Each run appends to a new segment file (results-000001.log, ...) and rolls over to the next one past
+ * RESULT_LOG_SEGMENT_BYTES. A record is a length, a CRC32 and the serialized result. fsync is batched: it happens
+ * after RESULT_LOG_SYNC_RECORDS results or RESULT_LOG_SYNC_MILLIS, whichever comes first, and on close. The time
+ * limit is kept by a background thread, so a last result isn't left waiting for the next one in a long-running
+ * --watch or --serve. Each submit's onDurable runs right after the fsync that covers it, on whichever thread synced.
+ * A record cut short by a crash fails its length or CRC check, and readers treat it as the end of the segment.
+ *
+ * ResultLogUploader replays the segments into the database later.
+ */
+public class ResultLog implements ResultSink {
+
+    public record Entry(MotionResult result, String videoFilename) {
+    }
+
+    private static final String SEGMENT_PREFIX = "results-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8; // payload length + CRC32
+
+    private final Path dir;
+    private FileChannel channel;
+    private long segmentNumber;
+    private int unsyncedRecords = 0;
+    private long oldestUnsyncedNanos;
+    private final List<Runnable> unsyncedCallbacks = new ArrayList<>();
+    private final ScheduledExecutorService syncTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "result-log-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ResultLog(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        List<Path> existing = segments(dir);
+        segmentNumber = existing.isEmpty() ? 0 : segmentNumber(existing.getLast());
+        openNextSegment();
+    }
+
+    @Override
+    public synchronized void submit(MotionResult result, String videoFilename, Runnable onDurable) throws IOException {
+        ByteBuffer record = encode(result, videoFilename);
+        if (channel.size() > 0 && channel.size() + record.remaining() > Config.RESULT_LOG_SEGMENT_BYTES) {
+            sync();
+            channel.close();
+            openNextSegment();
+        }
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        unsyncedCallbacks.add(onDurable);
+
+        if (unsyncedRecords++ == 0) {
+            oldestUnsyncedNanos = System.nanoTime();
+            syncTimer.schedule(this::syncIfDue, Config.RESULT_LOG_SYNC_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (unsyncedRecords >= Config.RESULT_LOG_SYNC_RECORDS
+                || System.nanoTime() - oldestUnsyncedNanos >= Config.RESULT_LOG_SYNC_MILLIS * 1_000_000L) {
+            sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        syncTimer.shutdownNow();
+        if (channel.isOpen()) {
+            sync();
+            channel.close();
+        }
+    }
+
+    /**
+     * Scheduled with the first unsynced record. If a sync has come and a newer batch started since, that batch has
+     * its own timer and this one does nothing.
+     */
+    private synchronized void syncIfDue() {
+        if (!channel.isOpen() || unsyncedRecords == 0
+                || System.nanoTime() - oldestUnsyncedNanos < Config.RESULT_LOG_SYNC_MILLIS * 1_000_000L) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            // The next submit or close tries again
+            System.err.println("Error syncing the result log: " + e.getMessage());
+        }
+    }
+
+    private void sync() throws IOException {
+        if (unsyncedRecords > 0) {
+            channel.force(false);
+            unsyncedRecords = 0;
+            for (Runnable onDurable : unsyncedCallbacks) {
+                try {
+                    onDurable.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Durability callback failed: " + e.getMessage());
+                }
+            }
+            unsyncedCallbacks.clear();
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentNumber++;
+        Path segment = dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // Make the new file's directory entry durable too
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException e) {
+            // not supported on every platform, the segment data itself is still synced
+        }
+    }
+
+    /**
+     * Segment files in the order they were written.
+     */
+    public static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(ResultLog::segmentNumber))
+                    .toList();
+        }
+    }
+
+    static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Read up to maxRecords complete records starting at position into entries. Returns the position after the last
+     * complete record, which is where the next read should start.
+     */
+    public static long read(Path segment, long position, int maxRecords, List<Entry> entries) throws IOException {
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            int read = 0;
+            while (read < maxRecords) {
+                header.clear();
+                if (in.read(header, position) < HEADER_BYTES) {
+                    break;
+                }
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length <= 0 || position + HEADER_BYTES + length > in.size()) {
+                    break;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                in.read(payload, position + HEADER_BYTES);
+                crc.reset();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                entries.add(decode(payload.array()));
+                position += HEADER_BYTES + length;
+                read++;
+            }
+            return position;
+        }
+    }
+
+    private static ByteBuffer encode(MotionResult result, String videoFilename) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            VideoInfo video = result.video();
+            out.writeDouble(video.fps());
+            out.writeInt(video.frameWidth());
+            out.writeInt(video.frameHeight());
+            out.writeInt(video.totalFrames());
+            out.writeBoolean(result.detectionTime() != null);
+            if (result.detectionTime() != null) {
+                Instant instant = result.detectionTime().toInstant();
+                out.writeLong(instant.getEpochSecond());
+                out.writeInt(instant.getNano());
+                out.writeUTF(result.detectionTime().getZone().getId());
+            }
+            out.writeInt(result.totalFramesProcessed());
+            out.writeInt(result.firstMotionFrame());
+            out.writeInt(result.lastMotionFrame());
+            out.writeDouble(result.firstMotionX());
+            out.writeBoolean(result.isRejected());
+            out.writeUTF(videoFilename);
+        }
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return record;
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            VideoInfo video = new VideoInfo(in.readDouble(), in.readInt(), in.readInt(), in.readInt());
+            ZonedDateTime detectionTime = null;
+            if (in.readBoolean()) {
+                Instant instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                detectionTime = instant.atZone(ZoneId.of(in.readUTF()));
+            }
+            MotionResult result = new MotionResult(video, detectionTime, in.readInt(), in.readInt(), in.readInt(),
+                    in.readDouble(), in.readBoolean());
+            return new Entry(result, in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.Config;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Replays a ResultLog into the database, separately from processing.
+ *
+ * How far each segment has been uploaded is kept in upload.offsets next to the segments and advanced after every
+ * committed batch, so the uploader can be stopped and re-run at any time, including while a run is still appending.
+ * A crash between a batch commit and the offset update re-sends that batch, so rows are delivered at least once.
+ *
+ * java --enable-preview -cp target/speedcam-0.1-jar-with-dependencies.jar com.pinealpha.util.ResultLogUploader [--log <dir>] [--table <name>]
+ */
+public class ResultLogUploader {
+
+    private static final String OFFSETS_FILE = "upload.offsets";
+
+    public static void main(String[] args) throws IOException, SQLException {
+        Path dir = Path.of(Config.RESULT_LOG_DIR);
+        String table = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--log" -> dir = Path.of(Helper.parseValue(args, ++i, "--log"));
+                    case "--table" -> table = Helper.parseValue(args, ++i, "--table");
+                    default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: ResultLogUploader [--log <dir>] [--table <name>]");
+            System.exit(1);
+        }
+        long uploaded = upload(dir, DatabaseManager::getConnection, DatabaseManager.getTableName(table));
+        System.out.println("Uploaded " + uploaded + " results from " + dir);
+    }
+
+    /**
+     * Upload everything not yet uploaded. Returns the number of results inserted.
+     */
+    public static long upload(Path dir, AsyncResultWriter.ConnectionFactory connectionFactory, String tableName) throws IOException, SQLException {
+        List<Path> segments = ResultLog.segments(dir);
+        Properties offsets = readOffsets(dir);
+        long uploaded = 0;
+
+        try (Connection conn = connectionFactory.open();
+             PreparedStatement pstmt = conn.prepareStatement(DatabaseManager.getInsertSQL(tableName))) {
+            conn.setAutoCommit(false);
+            for (Path segment : segments) {
+                String name = segment.getFileName().toString();
+                long position = Long.parseLong(offsets.getProperty(name, "0"));
+
+                while (true) {
+                    List<ResultLog.Entry> entries = new ArrayList<>();
+                    long next = ResultLog.read(segment, position, Config.DB_BATCH_SIZE, entries);
+                    if (entries.isEmpty()) {
+                        break;
+                    }
+                    for (ResultLog.Entry entry : entries) {
+                        DatabaseManager.bindMotionResult(pstmt, entry.result(), entry.videoFilename());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    conn.commit();
+
+                    position = next;
+                    uploaded += entries.size();
+                    offsets.setProperty(name, Long.toString(position));
+                    writeOffsets(dir, offsets);
+                }
+            }
+        }
+        return uploaded;
+    }
+
+    private static Properties readOffsets(Path dir) throws IOException {
+        Properties offsets = new Properties();
+        Path file = dir.resolve(OFFSETS_FILE);
+        if (Files.exists(file)) {
+            try (Reader in = Files.newBufferedReader(file)) {
+                offsets.load(in);
+            }
+        }
+        return offsets;
+    }
+
+    private static void writeOffsets(Path dir, Properties offsets) throws IOException {
+        // Write then rename, so a crash leaves either the old offsets or the new ones
+        Path temp = dir.resolve(OFFSETS_FILE + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp)) {
+            offsets.store(out, "Bytes of each segment already uploaded");
+        }
+        Files.move(temp, dir.resolve(OFFSETS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,38 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where processVideos sends each MotionResult once a video is done.
+ */
+public interface ResultSink extends AutoCloseable {
+
+    /**
+     * Accept one result. May block to apply backpressure, but should not fail processing because storage is slow.
+     */
+    default void submit(MotionResult result, String videoFilename) throws IOException, InterruptedException {
+        submit(result, videoFilename, () -> {});
+    }
+
+    /**
+     * Accept one result and run onDurable once it has been committed or synced to disk, possibly on another thread.
+     * onDurable never runs for a result that failed to write, and should be quick since it may hold up the writer.
+     */
+    void submit(MotionResult result, String videoFilename, Runnable onDurable) throws IOException, InterruptedException;
+
+    /**
+     * Make everything submitted so far durable, then release resources.
+     */
+    @Override
+    void close() throws IOException, InterruptedException;
+
+    static ResultSink open(Args args) throws IOException {
+        return switch (args.sink()) {
+            case DB -> new AsyncResultWriter();
+            case LOG -> new ResultLog(Path.of(Config.RESULT_LOG_DIR));
+        };
+    }
+}
@@ -0,0 +1,44 @@
+#!/bin/sh
+# Build libcvwrapper for the current platform against an installed OpenCV 4.12 (found through pkg-config).
+# Output goes to <os>-<arch>/ next to this script, where NativeLoader looks before the checked in macOS ARM64 build.
+# macOS produces libcvwrapper.dylib, Linux produces libcvwrapper.so. Both look for OpenCV next to themselves first.
+set -e
+cd "$(dirname "$0")"
+
+OPENCV_FLAGS=$(pkg-config --cflags --libs opencv4)
+OPENCV_LIBDIR=$(pkg-config --variable=libdir opencv4)
+
+case "$(uname -m)" in
+    arm64|aarch64) ARCH=arm64 ;;
+    x86_64|amd64) ARCH=x86_64 ;;
+    *)
+        echo "Unsupported architecture: $(uname -m)" >&2
+        exit 1
+        ;;
+esac
+
+case "$(uname -s)" in
+    Darwin)
+        OUT=macos-$ARCH
+        mkdir -p "$OUT"
+        c++ -std=c++17 -O2 -dynamiclib cv_wrapper.cpp -o "$OUT"/libcvwrapper.dylib $OPENCV_FLAGS -Wl,-rpath,@loader_path
+        # The motion kernel also needs the video and videoio modules bundled alongside the existing ones
+        cp "$OPENCV_LIBDIR"/libopencv_video.412.dylib "$OPENCV_LIBDIR"/libopencv_videoio.412.dylib "$OUT"/
+        ;;
+    Linux)
+        OUT=linux-$ARCH
+        mkdir -p "$OUT"
+        c++ -std=c++17 -O2 -shared -fPIC cv_wrapper.cpp -o "$OUT"/libcvwrapper.so $OPENCV_FLAGS -Wl,-rpath,'$ORIGIN'
+        # The Java bindings, if this OpenCV was built with them; the modules themselves come from the system
+        JNI_LIB=$(find "$OPENCV_LIBDIR"/.. -name 'libopencv_java4120.so' 2>/dev/null | head -n 1)
+        if [ -n "$JNI_LIB" ]; then
+            cp "$JNI_LIB" "$OUT"/
+        else
+            echo "libopencv_java4120.so not found under $OPENCV_LIBDIR/.., the JNI backend won't load" >&2
+        fi
+        ;;
+    *)
+        echo "Unsupported platform: $(uname -s)" >&2
+        exit 1
+        ;;
+esac
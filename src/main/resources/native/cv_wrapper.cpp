@@ -1,6 +1,9 @@
 // cv_wrapper.cpp
 #include <opencv2/opencv.hpp>
 #include <opencv2/objdetect.hpp>
+#include <opencv2/video.hpp>
+#include <cstdint>
+#include <vector>
 
 extern "C" {
 
@@ -28,6 +31,23 @@ int face_detect(const char* imagePath, const char* cascadePath, const char* outP
     return cv::imwrite(outPath, imgIn) ? 1 : 0;
 }
 
+// Detect faces in a BGR image owned by the caller and draw rectangles on it in place, rows step bytes apart.
+// Returns the number of faces found, or -1 if the cascade can't be loaded.
+int face_detect_pixels(uint8_t* pixels, int32_t rows, int32_t cols, int64_t step, const char* cascadePath) {
+    cv::Mat imgIn(rows, cols, CV_8UC3, pixels, (size_t) step);
+
+    cv::CascadeClassifier faceDetector;
+    if (!faceDetector.load(cascadePath)) return -1;
+
+    std::vector<cv::Rect> faces;
+    faceDetector.detectMultiScale(imgIn, faces);
+
+    for (const auto& rect : faces) {
+        cv::rectangle(imgIn, rect, cv::Scalar(0, 0, 255), 5);
+    }
+    return (int) faces.size();
+}
+
 // Load image and return its width
 int get_image_width(const char* path) {
     cv::Mat img = cv::imread(path);
@@ -38,4 +58,96 @@ int get_image_width(const char* path) {
 }
 
 
-}
\ No newline at end of file
+// Per-frame contour stats for one area threshold. Mirrors THRESHOLD_STATS in NativeMotionKernel.java.
+typedef struct {
+    double total_area;
+    double largest_area;
+    double largest_centroid_x;
+    int32_t significant_contours;
+    int32_t reserved;
+} ThresholdStats;
+
+// Read fps, width, height and frame count into info[0..3]. Returns 1 on success, 0 if the video can't be opened.
+int motion_video_info(const char* videoPath, double* info) {
+    cv::VideoCapture cap(videoPath);
+    if (!cap.isOpened()) return 0;
+
+    info[0] = cap.get(cv::CAP_PROP_FPS);
+    info[1] = cap.get(cv::CAP_PROP_FRAME_WIDTH);
+    info[2] = cap.get(cv::CAP_PROP_FRAME_HEIGHT);
+    info[3] = cap.get(cv::CAP_PROP_FRAME_COUNT);
+    return 1;
+}
+
+// Run the whole motion loop (MOG2, ROI mask, MORPH_CLOSE, contours, area, centroid) over a video.
+// For every frame, writes one ThresholdStats per area threshold to out[frame * thresholdCount + t].
+// Returns the number of frames written, or -1 if the video can't be opened.
+int motion_analyze(const char* videoPath,
+                   const int32_t* roadPoints, int32_t pointCount,
+                   int32_t history, double varThreshold, int32_t detectShadows, int32_t kernelSize,
+                   const double* areaThresholds, int32_t thresholdCount,
+                   ThresholdStats* out, int32_t maxFrames) {
+    cv::VideoCapture cap(videoPath);
+    if (!cap.isOpened()) return -1;
+
+    int width = (int) cap.get(cv::CAP_PROP_FRAME_WIDTH);
+    int height = (int) cap.get(cv::CAP_PROP_FRAME_HEIGHT);
+
+    std::vector<cv::Point> polygon;
+    for (int i = 0; i < pointCount; i++) {
+        polygon.emplace_back(roadPoints[2 * i], roadPoints[2 * i + 1]);
+    }
+    cv::Mat roiMask = cv::Mat::zeros(height, width, CV_8UC1);
+    cv::fillPoly(roiMask, std::vector<std::vector<cv::Point>>{polygon}, cv::Scalar(255));
+
+    cv::Ptr<cv::BackgroundSubtractorMOG2> bgSubtractor = cv::createBackgroundSubtractorMOG2();
+    bgSubtractor->setDetectShadows(detectShadows != 0);
+    bgSubtractor->setHistory(history);
+    bgSubtractor->setVarThreshold(varThreshold);
+
+    cv::Mat kernel = cv::getStructuringElement(cv::MORPH_ELLIPSE, cv::Size(kernelSize, kernelSize));
+
+    cv::Mat frame, fgMask, maskedFgMask;
+    std::vector<std::vector<cv::Point>> contours;
+    std::vector<double> areas;
+
+    int frameCount = 0;
+    while (frameCount < maxFrames && cap.read(frame) && !frame.empty()) {
+        bgSubtractor->apply(frame, fgMask);
+        cv::bitwise_and(fgMask, roiMask, maskedFgMask);
+        cv::morphologyEx(maskedFgMask, maskedFgMask, cv::MORPH_CLOSE, kernel);
+
+        contours.clear();
+        cv::findContours(maskedFgMask, contours, cv::RETR_EXTERNAL, cv::CHAIN_APPROX_SIMPLE);
+
+        areas.resize(contours.size());
+        for (size_t i = 0; i < contours.size(); i++) {
+            areas[i] = cv::contourArea(contours[i]);
+        }
+
+        ThresholdStats* row = out + (size_t) frameCount * thresholdCount;
+        for (int t = 0; t < thresholdCount; t++) {
+            ThresholdStats stats = {0, 0, -1, 0, 0};
+            int largest = -1;
+            for (size_t i = 0; i < areas.size(); i++) {
+                if (areas[i] > areaThresholds[t]) {
+                    stats.significant_contours++;
+                    stats.total_area += areas[i];
+                    if (largest == -1 || areas[i] > areas[largest]) {
+                        largest = (int) i;
+                    }
+                }
+            }
+            if (largest != -1) {
+                stats.largest_area = areas[largest];
+                cv::Moments m = cv::moments(contours[largest]);
+                stats.largest_centroid_x = m.m00 != 0 ? m.m10 / m.m00 : width / 2.0;
+            }
+            row[t] = stats;
+        }
+        frameCount++;
+    }
+    return frameCount;
+}
+
+}
@@ -0,0 +1,161 @@
+package com.pinealpha;
+
+import com.pinealpha.model.Args;
+import com.pinealpha.model.Config;
+import com.pinealpha.model.MotionResult;
+import com.pinealpha.model.TrackerThresholds;
+import com.pinealpha.util.Helper;
+import com.pinealpha.util.ProcessedIndex;
+import com.pinealpha.util.ResultLog;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FeatureCacheTest {
+
+    private static final String CLIP_NAME = "Road Cam 6-7-2025, 2.05.46pm - synthetic.avi";
+
+    private static Path clipPath;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Helper.loadJNIOpenCV();
+        SyntheticClip clip = new SyntheticClip(200, new SyntheticClip.Car(60));
+        try {
+            clipPath = clip.write(Files.createTempDirectory("speedcam-features"), CLIP_NAME);
+        } finally {
+            clip.release();
+        }
+    }
+
+    /**
+     * One frame of what FrameAnalyzer saw, as the feature file should keep it.
+     */
+    private record Frame(double largestArea, double largestCentroidX, List<Double> areas) {
+    }
+
+    @Test
+    @DisplayName("Feature File Round Trip")
+    void testRoundTrip() throws IOException {
+        Args args = Helper.parse(new String[]{"--in", clipPath.toString()});
+        SyntheticClip clip = new SyntheticClip(120, new SyntheticClip.Car(20));
+        FrameAnalyzer analyzer = new FrameAnalyzer(clip.video(), args);
+        FeatureCache.Writer writer = new FeatureCache.Writer(clip.video(), args);
+        List<Frame> expected = new ArrayList<>();
+        Mat frame = new Mat();
+        try {
+            for (int i = 0; i < clip.frames(); i++) {
+                clip.render(i, frame);
+                analyzer.analyze(frame, Config.FEATURE_MIN_AREA);
+                writer.record(analyzer);
+
+                int largest = -1;
+                List<Double> areas = new ArrayList<>();
+                for (int b = 0; b < analyzer.blobCount(); b++) {
+                    if (largest == -1 || analyzer.blobArea(b) > analyzer.blobArea(largest)) {
+                        largest = b;
+                    }
+                    if (analyzer.blobArea(b) > Config.FEATURE_MIN_AREA) {
+                        areas.add(analyzer.blobArea(b));
+                    }
+                }
+                areas.sort(Comparator.reverseOrder());
+                expected.add(new Frame(largest != -1 ? analyzer.blobArea(largest) : 0,
+                        largest != -1 ? analyzer.blobCentroidX(largest) : -1, areas));
+            }
+        } finally {
+            frame.release();
+            analyzer.release();
+            clip.release();
+        }
+
+        Path file = Files.createTempFile("speedcam-round-trip", Config.FEATURE_FILE_SUFFIX);
+        writer.write(file);
+        for (FeatureCache.Reader reader : List.of(new FeatureCache.Reader(file), new FeatureCache.Reader(writer.toBuffer(), "memory"))) {
+            assertEquals(FeatureCache.fingerprint(args), reader.fingerprint());
+            assertEquals(clip.video(), reader.video());
+            assertEquals(expected.size(), reader.frames());
+            for (int i = 0; i < reader.frames(); i++) {
+                Frame want = expected.get(i);
+                assertEquals(want.largestArea(), reader.largestArea(i), "Largest area at frame " + i);
+                assertEquals(want.largestCentroidX(), reader.largestCentroidX(i), "Centroid at frame " + i);
+                List<Double> areas = new ArrayList<>();
+                for (int a = reader.areaStart(i); a < reader.areaEnd(i); a++) {
+                    areas.add(reader.area(a));
+                }
+                assertEquals(want.areas(), areas, "Areas at frame " + i);
+            }
+        }
+        assertTrue(expected.stream().anyMatch(f -> !f.areas().isEmpty()), "The car should leave areas in the file");
+        Files.delete(file);
+    }
+
+    @Test
+    @DisplayName("Replay Matches Processing the Video")
+    void testReplayMatchesProcessing() throws IOException {
+        Path features = FeatureCache.pathFor(clipPath.toString());
+        Files.deleteIfExists(features);
+
+        MotionResult processed = SpeedDetect.getCarSpeedFromVideo(clipPath.toString(), Helper.parse(new String[]{"--in", clipPath.toString()}));
+        MotionResult saved = SpeedDetect.getCarSpeedFromVideo(clipPath.toString(),
+                Helper.parse(new String[]{"--in", clipPath.toString(), "--save-features"}));
+        assertTrue(Files.exists(features), "--save-features should write the feature file");
+        assertEquals(processed, saved, "Saving features shouldn't change the result");
+
+        FeatureCache.Reader reader = new FeatureCache.Reader(features);
+        assertEquals(processed, FeatureReplay.replay(reader, CLIP_NAME, TrackerThresholds.DEFAULT));
+
+        // Other thresholds change the replay, not the saved features
+        MotionResult ignored = FeatureReplay.replay(reader, CLIP_NAME, TrackerThresholds.DEFAULT.with(Map.of("defaultAreaThreshold", "1000000")));
+        assertEquals(-1, ignored.firstMotionFrame(), "No contour is that large, so no car should be found");
+        assertThrows(IllegalArgumentException.class, () -> FeatureReplay.replay(reader, CLIP_NAME,
+                TrackerThresholds.DEFAULT.with(Map.of("leftToRightAreaThreshold", "10"))));
+    }
+
+    @Test
+    @DisplayName("Missing or Stale Features Bypass the Processed Index")
+    void testSaveFeaturesBypassesIndex() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("speedcam-features-index");
+        Path video = Files.copy(clipPath, dir.resolve(CLIP_NAME));
+        Args plain = Helper.parse(new String[]{"--in", video.toString()});
+        Args saving = Helper.parse(new String[]{"--in", video.toString(), "--save-features"});
+        MotionResult result = SpeedDetect.getCarSpeedFromVideo(video.toString(), plain);
+
+        // Known from a run without --save-features, so there's no feature file yet
+        try (ProcessedIndex index = new ProcessedIndex(dir.resolve("index.tsv"), "same parameters", new ResultLog(dir.resolve("log")))) {
+            index.submit(result, video.toString());
+        }
+        try (ProcessedIndex index = new ProcessedIndex(dir.resolve("index.tsv"), "same parameters", new ResultLog(dir.resolve("log")))) {
+            assertEquals(result, SpeedDetect.previousResult(index, video.toString(), plain));
+            assertNull(SpeedDetect.previousResult(index, video.toString(), saving), "No feature file, so process it again");
+
+            SpeedDetect.getCarSpeedFromVideo(video.toString(), saving);
+            assertTrue(FeatureCache.isCurrent(video.toString(), saving));
+            assertEquals(result, SpeedDetect.previousResult(index, video.toString(), saving));
+
+            Args gray = Helper.parse(new String[]{"--in", video.toString(), "--save-features", "--gray"});
+            assertFalse(FeatureCache.isCurrent(video.toString(), gray), "Saved with other analysis settings");
+
+            Path features = FeatureCache.pathFor(video.toString());
+            Files.setLastModifiedTime(features, FileTime.fromMillis(Files.getLastModifiedTime(video).toMillis() - 60_000));
+            assertFalse(FeatureCache.isCurrent(video.toString(), saving), "Older than the clip");
+            assertNull(SpeedDetect.previousResult(index, video.toString(), saving));
+        }
+    }
+}
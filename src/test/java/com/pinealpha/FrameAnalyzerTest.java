@@ -0,0 +1,76 @@
+package com.pinealpha;
+
+import com.pinealpha.model.Args;
+import com.pinealpha.util.Helper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameAnalyzerTest {
+
+    // A first car warms up everything that is made once, including a --track view for each window position,
+    // and the second one, on the same path, is measured
+    private static final int WARMUP_FRAMES = 140;
+    private static final int MEASURED_FRAMES = 50;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Helper.loadJNIOpenCV();
+    }
+
+    /**
+     * Java heap allocated by analyze() per frame, on a synthetic clip with a car in view for every measured frame.
+     * Contours go through OpenCV's findContours binding, which allocates for each contour on every frame; components
+     * and the --track window views shouldn't allocate at all once warmed up. Prints bytes per frame for comparing builds.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"", "--components", "--track", "--components --track"})
+    @DisplayName("Measure Per-Frame Allocation")
+    void testAnalyzeAllocation(String flags) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<String> cli = new ArrayList<>(List.of("--in", "synthetic"));
+        if (!flags.isEmpty()) {
+            cli.addAll(Arrays.asList(flags.split(" ")));
+        }
+        Args args = Helper.parse(cli.toArray(String[]::new));
+
+        SyntheticClip clip = new SyntheticClip(WARMUP_FRAMES + MEASURED_FRAMES,
+                new SyntheticClip.Car(0), new SyntheticClip.Car(WARMUP_FRAMES - 30));
+        FrameAnalyzer analyzer = new FrameAnalyzer(clip.video(), args);
+        Mat frame = new Mat();
+        long allocated = 0;
+        try {
+            for (int i = 0; i < clip.frames(); i++) {
+                clip.render(i, frame);
+                analyzer.follow(analyzer.significantContours() > 0);
+                long before = threads.getCurrentThreadAllocatedBytes();
+                analyzer.analyze(frame, 2000);
+                long after = threads.getCurrentThreadAllocatedBytes();
+                if (i >= WARMUP_FRAMES) {
+                    allocated += after - before;
+                    assertTrue(analyzer.significantContours() > 0, "Car should be in view at frame " + i);
+                }
+            }
+        } finally {
+            frame.release();
+            analyzer.release();
+            clip.release();
+        }
+
+        long perFrame = allocated / MEASURED_FRAMES;
+        System.out.println("analyze() " + (flags.isEmpty() ? "contours" : flags) + ": " + perFrame + " bytes/frame");
+        if (args.components()) {
+            assertTrue(perFrame < 64, "Components shouldn't allocate per frame, got " + perFrame + " bytes/frame");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.pinealpha;
+
+import com.pinealpha.model.Config;
+import com.pinealpha.model.VideoInfo;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MotionTrackerTest {
+
+    private static final VideoInfo VIDEO = new VideoInfo(30.0, 1920, 1080, 300);
+
+    // A small blob, above the motion and area thresholds but too short-lived to become sustained motion
+    private static final double NOISE_PERCENTAGE = 0.5;
+    private static final double NOISE_AREA = 10_000;
+
+    @Test
+    @DisplayName("Skipped Frames Don't Dilute the Early Noise Ratio")
+    void testSkippedFramesLeftOutOfNoiseRatio() {
+        // Noise on most analyzed frames, the rest of the early window stepped over as --stride does
+        int analyzedThrough = Config.INITIAL_FRAME_SKIP + 20;
+        MotionTracker skipped = new MotionTracker("skipped", VIDEO, false);
+        MotionTracker quiet = new MotionTracker("quiet", VIDEO, false);
+        for (int frame = 0; frame <= Config.EARLY_FRAME_CUTOFF; frame++) {
+            if (frame <= analyzedThrough) {
+                boolean noisy = frame > Config.INITIAL_FRAME_SKIP && frame % 5 != 0;
+                double percentage = noisy ? NOISE_PERCENTAGE : 0;
+                double area = noisy ? NOISE_AREA : 0;
+                skipped.update(frame, percentage, area, 100);
+                quiet.update(frame, percentage, area, 100);
+            } else {
+                skipped.skip(frame);
+                quiet.update(frame, 0, 0, -1);
+            }
+        }
+
+        // 16 noisy frames out of the 26 seen is over NOISE_THRESHOLD, out of all 80 it isn't
+        assertTrue(skipped.isRejected(), "Ratio should be taken over the analyzed frames only");
+        assertFalse(quiet.isRejected(), "Frames analyzed as quiet still count toward the ratio");
+    }
+
+    @Test
+    @DisplayName("Next Event Starts Right After a Car Has Passed")
+    void testNextEventKeepsStartFrame() {
+        MotionTracker tracker = new MotionTracker("stream", VIDEO, false);
+        int frame = 0;
+        while (!tracker.carHasPassed()) {
+            boolean car = frame > Config.EARLY_FRAME_CUTOFF && frame <= Config.EARLY_FRAME_CUTOFF + 60;
+            tracker.update(frame, car ? NOISE_PERCENTAGE : 0, car ? NOISE_AREA : 0, car ? 100 : -1);
+            frame++;
+        }
+        int firstCar = tracker.firstMotionFrame();
+
+        // The next car shows up on the very next frame, well inside the window a reset would skip
+        tracker.nextEvent();
+        assertEquals(-1, tracker.firstMotionFrame());
+        for (int i = 0; i < Config.DEFAULT_CONSECUTIVE_FRAMES_REQUIRED; i++, frame++) {
+            tracker.update(frame, NOISE_PERCENTAGE, NOISE_AREA, 100);
+            assertTrue(tracker.hasMotion(), "Motion at frame " + frame + " should count");
+        }
+        assertTrue(tracker.sustainedMotion());
+        assertTrue(tracker.firstMotionFrame() > firstCar);
+        assertFalse(tracker.isRejected());
+    }
+}
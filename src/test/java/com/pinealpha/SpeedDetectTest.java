@@ -1,11 +1,14 @@
 package com.pinealpha;
 
+import com.pinealpha.model.Args;
 import com.pinealpha.model.Direction;
 import com.pinealpha.model.MotionResult;
 import com.pinealpha.util.DatabaseManager;
 import com.pinealpha.util.Helper;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.api.BeforeAll;
 
@@ -14,12 +17,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class SpeedDetectTest {
 
@@ -55,21 +62,30 @@ public class SpeedDetectTest {
         return EXPECTED_RESULTS.keySet().stream();
     }
 
+    static Stream<Arguments> scaledVideoProvider() {
+        String scales = System.getProperty("video.test.scales", "0.5,0.25");
+        return videoProvider().flatMap(video -> Arrays.stream(scales.split(","))
+                .map(scale -> Arguments.of(video, scale.trim())));
+    }
+
+    /**
+     * Options that change how frames are read or analyzed, each held to the ground truth rather than to the default run:
+     * pipelining, cropping and striding should change nothing, but luma only changes what MOG2 sees, the vector model is a
+     * different model, component pixel counts differ slightly from polygon areas, and blobs outside the tracking window
+     * no longer count toward the end of the event.
+     * Separate each set of flags with a semicolon in -Dvideo.test.variants.
+     */
+    static Stream<Arguments> variantProvider() {
+        String variants = System.getProperty("video.test.variants", "--pipeline;--roi-crop;--stride 4;--gray;--bg vector;--components;--track");
+        return Arrays.stream(variants.split(";"))
+                .flatMap(flags -> videoProvider().map(video -> Arguments.of(video, flags.trim())));
+    }
+
     @ParameterizedTest
     @MethodSource("videoProvider")
     @DisplayName("Test Motion Detection and Database Insertion")
     void testMotionDetectionAndDatabase(String videoIdentifier) throws IOException, SQLException {
-        Object[] expected = EXPECTED_RESULTS.get(videoIdentifier);
-        int expectedFirstFrame = (int) expected[0];
-        int expectedLastFrame = (int) expected[1];
-        Direction expectedDirection = (Direction) expected[2];
-
-        String videoPath = videoFiles.stream()
-                .filter(path -> path.contains(videoIdentifier))
-                .findFirst()
-                .orElse(null);
-
-        assertTrue(videoPath != null, "No video file found for identifier: " + videoIdentifier);
+        String videoPath = findVideo(videoIdentifier);
 
         System.out.println("\n\n------------------ TESTING: " + videoIdentifier + " ------------------");
         long startTime = System.currentTimeMillis();
@@ -84,6 +100,102 @@ public class SpeedDetectTest {
 
         System.out.println("--------------------------- TEST COMPLETE: ---------------------------");
 
+        assertMatchesExpected(videoIdentifier, actualResult, duration);
+    }
+
+    @ParameterizedTest
+    @MethodSource("scaledVideoProvider")
+    @DisplayName("Test Motion Detection on Downscaled Frames")
+    void testMotionDetectionAtScale(String videoIdentifier, String scale) throws IOException {
+        String videoPath = findVideo(videoIdentifier);
+
+        System.out.println("\n\n------------------ TESTING: " + videoIdentifier + " at scale " + scale + " ------------------");
+        long startTime = System.currentTimeMillis();
+        MotionResult actualResult = SpeedDetect.getCarSpeedFromVideo(videoPath,
+                Helper.parse(new String[]{"--in", videoPath, "--scale", scale}));
+        long duration = System.currentTimeMillis() - startTime;
+        System.out.println("Video processing at scale " + scale + " took " + duration + "ms");
+        actualResult.printMotionResults();
+
+        assertMatchesExpected(videoIdentifier, actualResult, duration);
+    }
+
+    @ParameterizedTest
+    @MethodSource("videoProvider")
+    @DisplayName("Compare JNI and FFM Backends")
+    void testNativeBackendMatchesJni(String videoIdentifier) throws IOException {
+        assumeTrue(NativeMotionKernel.isAvailable(), "libcvwrapper with motion_analyze not built for this platform");
+        String videoPath = findVideo(videoIdentifier);
+
+        System.out.println("\n\n------------------ TESTING: " + videoIdentifier + " JNI vs FFM ------------------");
+        long startTime = System.currentTimeMillis();
+        MotionResult jniResult = SpeedDetect.getCarSpeedFromVideo(videoPath, DEBUG);
+        long jniDuration = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        MotionResult ffmResult = SpeedDetect.getCarSpeedFromVideo(videoPath,
+                Helper.parse(new String[]{"--in", videoPath, "--backend", "ffm"}));
+        long ffmDuration = System.currentTimeMillis() - startTime;
+
+        System.out.println(String.format("JNI: %dms, FFM: %dms (%.2fx)", jniDuration, ffmDuration, (double) jniDuration / ffmDuration));
+
+        // Same OpenCV operations on the same frames, so the results should be identical
+        assertEquals(jniResult.isRejected(), ffmResult.isRejected(), "Rejection differs for " + videoIdentifier);
+        assertEquals(jniResult.firstMotionFrame(), ffmResult.firstMotionFrame(), "First frame differs for " + videoIdentifier);
+        assertEquals(jniResult.lastMotionFrame(), ffmResult.lastMotionFrame(), "Last frame differs for " + videoIdentifier);
+        assertEquals(jniResult.getDirection(), ffmResult.getDirection(), "Direction differs for " + videoIdentifier);
+    }
+
+    @ParameterizedTest(name = "{0} {1}")
+    @MethodSource("variantProvider")
+    @DisplayName("Test Motion Detection with Analysis Options")
+    void testVariantMatchesExpected(String videoIdentifier, String flags) throws IOException {
+        String videoPath = findVideo(videoIdentifier);
+        String[] cli = Stream.concat(Stream.of("--in", videoPath), Arrays.stream(flags.split(" "))).toArray(String[]::new);
+
+        System.out.println("\n\n------------------ TESTING: " + videoIdentifier + " " + flags + " ------------------");
+        long startTime = System.currentTimeMillis();
+        MotionResult actualResult = SpeedDetect.getCarSpeedFromVideo(videoPath, Helper.parse(cli));
+        long duration = System.currentTimeMillis() - startTime;
+        System.out.println("Video processing with " + flags + " took " + duration + "ms");
+        actualResult.printMotionResults();
+
+        assertMatchesExpected(videoIdentifier, actualResult, duration);
+    }
+
+    @Test
+    @DisplayName("Sweep Analysis Parameters and Thresholds")
+    void testParameterSweep() throws IOException, InterruptedException {
+        String grid = System.getProperty("video.test.sweep");
+        assumeTrue(grid != null && !grid.isEmpty(), "Set -Dvideo.test.sweep to a grid to run a parameter sweep");
+
+        Map<String, ParameterSweep.Expected> clips = new LinkedHashMap<>();
+        videoProvider().forEach(videoIdentifier -> {
+            Object[] expected = EXPECTED_RESULTS.get(videoIdentifier);
+            clips.put(findVideo(videoIdentifier), new ParameterSweep.Expected((int) expected[0], (int) expected[1], (Direction) expected[2]));
+        });
+
+        List<ParameterSweep.Row> rows = ParameterSweep.run(clips, ParameterSweep.parseGrid(grid), Args.of(VIDEO_PATH_PREFIX, false), FRAME_TOLERANCE);
+        ParameterSweep.print(rows);
+        assertFalse(rows.isEmpty());
+    }
+
+    private String findVideo(String videoIdentifier) {
+        String videoPath = videoFiles.stream()
+                .filter(path -> path.contains(videoIdentifier))
+                .findFirst()
+                .orElse(null);
+
+        assertTrue(videoPath != null, "No video file found for identifier: " + videoIdentifier);
+        return videoPath;
+    }
+
+    private void assertMatchesExpected(String videoIdentifier, MotionResult actualResult, long duration) {
+        Object[] expected = EXPECTED_RESULTS.get(videoIdentifier);
+        int expectedFirstFrame = (int) expected[0];
+        int expectedLastFrame = (int) expected[1];
+        Direction expectedDirection = (Direction) expected[2];
+
         if (actualResult.isRejected()) {
             System.out.println("Skipping assertions for rejected video: " + videoIdentifier);
             return;
@@ -0,0 +1,202 @@
+package com.pinealpha;
+
+import com.pinealpha.model.MotionResult;
+import com.pinealpha.util.Helper;
+import com.pinealpha.util.Metrics;
+import com.pinealpha.util.ResultSink;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpeedServerTest {
+
+    private static final String CLIP_NAME = "Road Cam 6-7-2025, 2.05.46pm - synthetic.avi";
+
+    private static Path clips;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final CountDownLatch stop = new CountDownLatch(1);
+    private final HoldingSink sink = new HoldingSink();
+    private Thread server;
+    private int port;
+
+    /**
+     * Records what happens to it, and holds each submit until release() so a clip can be kept in progress.
+     */
+    private static final class HoldingSink implements ResultSink {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch submitting = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void submit(MotionResult result, String videoFilename, Runnable onDurable) throws InterruptedException {
+            submitting.countDown();
+            released.await();
+            events.add("submit");
+            onDurable.run();
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        @Override
+        public void close() {
+            events.add("close");
+        }
+    }
+
+    @BeforeAll
+    static void setupClips() throws IOException {
+        Helper.loadJNIOpenCV();
+        clips = Files.createTempDirectory("speedcam-server");
+        SyntheticClip clip = new SyntheticClip(200, new SyntheticClip.Car(60));
+        try {
+            clip.write(clips, CLIP_NAME);
+        } finally {
+            clip.release();
+        }
+    }
+
+    @BeforeEach
+    void startServer() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new Thread(() -> {
+            try {
+                // A short timeout, since some JDKs' HttpServer.stop waits out all of it even when idle
+                SpeedServer.run(Helper.parse(new String[]{"--serve", Integer.toString(port), "--workers", "1", "--timeout", "10"}), sink, stop);
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.start();
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                assertEquals(200, client.send(request("/health").GET().build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+                return;
+            } catch (IOException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        sink.release();
+        stop.countDown();
+        server.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @Test
+    @DisplayName("Bad Jobs Are Rejected With 4xx")
+    void testBadJobs() throws Exception {
+        assertEquals(405, client.send(request("/jobs").GET().build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        assertRejected("--scale\n0.5\n", "Video path is required");
+        assertRejected("--in\n" + clips + "\n--scale\n2\n", "--scale must be greater than 0 and at most 1");
+        assertRejected("--in\n" + clips + "\n--frobnicate\n", "Unknown argument: --frobnicate");
+        assertRejected("--in\n" + clips + "\n--watch\n", "A job needs --in and can't use --watch");
+        assertRejected("--in\n" + clips.resolve("missing.mp4") + "\n", "Path does not exist");
+        assertTrue(sink.events.isEmpty(), "Rejected jobs shouldn't reach the sink");
+    }
+
+    @Test
+    @DisplayName("Job Arguments Are One per Line")
+    void testJob() throws Exception {
+        sink.release();
+        HttpResponse<String> response = post("  --in \n\n" + clips + "\n--scale\n0.5\n");
+
+        assertEquals(200, response.statusCode());
+        List<String> lines = response.body().lines().toList();
+        assertEquals(2, lines.size(), response.body());
+        assertTrue(lines.get(0).startsWith("{\"video\":\"" + clips.resolve(CLIP_NAME) + "\""), lines.get(0));
+        assertTrue(lines.get(0).contains("\"hasMotion\":true"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("{\"clips\":1,"), lines.get(1));
+        assertEquals(List.of("submit"), sink.events);
+    }
+
+    @Test
+    @DisplayName("Stopping Waits for Clips in Progress Before Closing the Sink")
+    void testShutdown() throws Exception {
+        CompletableFuture<HttpResponse<String>> job = client.sendAsync(
+                request("/jobs").POST(HttpRequest.BodyPublishers.ofString("--in\n" + clips + "\n")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue(sink.submitting.await(60, TimeUnit.SECONDS), "The clip should reach the sink");
+
+        stop.countDown();
+        server.join(500);
+        assertTrue(server.isAlive(), "The server should wait for the clip in progress");
+        assertFalse(sink.events.contains("close"), "The sink shouldn't close under a clip in progress");
+
+        sink.release();
+        server.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse(server.isAlive());
+        assertEquals(List.of("submit", "close"), sink.events);
+        HttpResponse<String> response = job.get(30, TimeUnit.SECONDS);
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"clips\":1"), "The client should still get its answer: " + response.body());
+    }
+
+    @Test
+    @DisplayName("A Port in Use Still Closes the Sink and Finishes Metrics")
+    void testPortInUse() throws Exception {
+        List<Boolean> reports = new CopyOnWriteArrayList<>();
+        Metrics.Reporter reporter = (snapshot, finalReport) -> reports.add(finalReport);
+        Metrics.addReporter(reporter);
+        try {
+            HoldingSink second = new HoldingSink();
+            assertThrows(BindException.class, () -> SpeedServer.run(
+                    Helper.parse(new String[]{"--serve", Integer.toString(port)}), second, new CountDownLatch(0)));
+            assertEquals(List.of("close"), second.events);
+
+            // The failed run gave its Metrics run back, so stopping the first server ends the last one
+            stop.countDown();
+            server.join(TimeUnit.SECONDS.toMillis(30));
+            assertEquals(List.of(true), reports);
+        } finally {
+            Metrics.removeReporter(reporter);
+        }
+    }
+
+    private void assertRejected(String body, String message) throws Exception {
+        HttpResponse<String> response = post(body);
+        assertEquals(400, response.statusCode(), response.body());
+        assertTrue(response.body().startsWith(message), response.body());
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        return client.send(request("/jobs").POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path));
+    }
+}
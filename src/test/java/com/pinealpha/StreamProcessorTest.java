@@ -0,0 +1,77 @@
+package com.pinealpha;
+
+import com.pinealpha.model.Direction;
+import com.pinealpha.model.MotionResult;
+import com.pinealpha.util.Helper;
+import com.pinealpha.util.ResultSink;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamProcessorTest {
+
+    private static final String CLIP_NAME = "Road Cam 6-7-2025, 2.05.46pm - synthetic.avi";
+
+    /**
+     * Keeps every result in memory, durable as soon as it arrives.
+     */
+    private static final class CollectingSink implements ResultSink {
+        final List<MotionResult> results = new ArrayList<>();
+
+        @Override
+        public void submit(MotionResult result, String videoFilename, Runnable onDurable) {
+            results.add(result);
+            onDurable.run();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Helper.loadJNIOpenCV();
+    }
+
+    @Test
+    @DisplayName("Two Cars in One Clip Are Two Events")
+    void testTwoEventsInOneClip() throws IOException, InterruptedException {
+        SyntheticClip.Car first = new SyntheticClip.Car(60);
+        SyntheticClip.Car second = new SyntheticClip.Car(260);
+        SyntheticClip clip = new SyntheticClip(420, first, second);
+        Path dir = Files.createTempDirectory("speedcam-stream");
+        try {
+            clip.write(dir, CLIP_NAME);
+        } finally {
+            clip.release();
+        }
+
+        CollectingSink sink = new CollectingSink();
+        List<MotionResult> events = StreamProcessor.run(Helper.parse(new String[]{"--in", dir.toString(), "--stream"}), sink);
+
+        assertEquals(2, events.size(), "Expected one event per car");
+        assertEquals(events, sink.results, "Every event should go to the sink");
+        ZonedDateTime clipStart = Helper.parseDateTimeFromFilename(CLIP_NAME);
+        for (int i = 0; i < events.size(); i++) {
+            MotionResult event = events.get(i);
+            SyntheticClip.Car car = i == 0 ? first : second;
+            assertEquals(clipStart, event.detectionTime(), "Detection time should be the clip start, the offset is in the frames");
+            assertEquals(Direction.LeftToRight, event.getDirection());
+            assertTrue(Math.abs(event.firstMotionFrame() - (car.enterFrame() + 1)) <= 2,
+                    "Event " + (i + 1) + " should start as its car enters, got frame " + event.firstMotionFrame());
+            assertTrue(event.lastMotionFrame() <= car.leaveFrame() + 1,
+                    "Event " + (i + 1) + " should end once its car has left, got frame " + event.lastMotionFrame());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.pinealpha;
+
+import com.pinealpha.model.VideoInfo;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Generated road clips for tests that can't rely on the sample videos: a flat gray road with sensor noise and textured
+ * car-sized blocks crossing it left to right at a constant speed, inside Config.getRoadPoints at 1080p. The texture
+ * keeps the inside of a car changing from frame to frame, a flat block would fade into MOG2's short history.
+ * MJPEG in AVI, which OpenCV can write and read back without FFmpeg.
+ */
+public class SyntheticClip {
+
+    public static final int WIDTH = 1920;
+    public static final int HEIGHT = 1080;
+    public static final double FPS = 30;
+
+    private static final int CAR_WIDTH = 200;
+    private static final int CAR_TOP = 900;
+    private static final int CAR_HEIGHT = 100;
+    private static final int CAR_SPEED = 20; // pixels per frame
+
+    /**
+     * A car whose front enters the frame at enterFrame.
+     */
+    public record Car(int enterFrame) {
+
+        int leftAt(int frame) {
+            return (frame - enterFrame) * CAR_SPEED - CAR_WIDTH;
+        }
+
+        /**
+         * Last frame any of the car is in view.
+         */
+        public int leaveFrame() {
+            return enterFrame + (WIDTH + CAR_WIDTH) / CAR_SPEED - 1;
+        }
+    }
+
+    private final int frames;
+    private final List<Car> cars;
+    private final Mat noise = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3);
+    private final Mat texture = new Mat(CAR_HEIGHT, CAR_WIDTH, CvType.CV_8UC3);
+
+    public SyntheticClip(int frames, Car... cars) {
+        this.frames = frames;
+        this.cars = List.of(cars);
+        Core.setRNGSeed(-1);
+        Core.randu(texture, 30, 230);
+    }
+
+    public VideoInfo video() {
+        return new VideoInfo(FPS, WIDTH, HEIGHT, frames);
+    }
+
+    public int frames() {
+        return frames;
+    }
+
+    /**
+     * Draws frame number index into frame, reallocating it only the first time.
+     */
+    public void render(int index, Mat frame) {
+        frame.create(HEIGHT, WIDTH, CvType.CV_8UC3);
+        frame.setTo(new Scalar(100, 100, 100));
+        for (Car car : cars) {
+            int left = car.leftAt(index);
+            int from = Math.max(left, 0);
+            int to = Math.min(left + CAR_WIDTH, WIDTH);
+            if (from < to) {
+                Mat visible = texture.submat(0, CAR_HEIGHT, from - left, to - left);
+                Mat target = frame.submat(CAR_TOP, CAR_TOP + CAR_HEIGHT, from, to);
+                visible.copyTo(target);
+                visible.release();
+                target.release();
+            }
+        }
+        // Same noise for the same frame, so two runs over the clip see identical pixels
+        Core.setRNGSeed(index);
+        Core.randn(noise, 0, 2);
+        Core.add(frame, noise, frame);
+    }
+
+    /**
+     * Writes the clip to dir under a camera-style name such as "Road Cam 6-7-2025, 2.05.46pm - synthetic.avi".
+     */
+    public Path write(Path dir, String fileName) {
+        Path path = dir.resolve(fileName);
+        VideoWriter writer = new VideoWriter(path.toString(), VideoWriter.fourcc('M', 'J', 'P', 'G'), FPS, new Size(WIDTH, HEIGHT), true);
+        if (!writer.isOpened()) {
+            throw new IllegalStateException("Can't write an MJPEG clip to " + path);
+        }
+        Mat frame = new Mat();
+        for (int i = 0; i < frames; i++) {
+            render(i, frame);
+            writer.write(frame);
+        }
+        writer.release();
+        frame.release();
+        return path;
+    }
+
+    public void release() {
+        noise.release();
+        texture.release();
+    }
+}
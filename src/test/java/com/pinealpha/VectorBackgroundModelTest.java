@@ -0,0 +1,197 @@
+package com.pinealpha;
+
+import com.pinealpha.model.AnalysisParameters;
+import com.pinealpha.util.Helper;
+import jdk.incubator.vector.FloatVector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VectorBackgroundModelTest {
+
+    private static final int ROWS = 6;
+    private static final int COLS = 37; // not a multiple of any vector length, so the scalar tail runs too
+    private static final int PADDING = 5; // columns of the parent Mats on either side of the view
+    private static final int BLOCK_WIDTH = 6;
+    private static final int BLOCK_SPEED = 3;
+    private static final int MOVING_FRAMES = 20;
+    private static final int FROZEN_FRAMES = 4;
+
+    /**
+     * Child process for the 128-bit case: one byte vector widens into two float vectors, as on NEON.
+     */
+    public static final class Narrow {
+        public static void main(String[] args) throws IOException {
+            assertEquals(128, FloatVector.SPECIES_PREFERRED.vectorBitSize(), "Expected -XX:MaxVectorSize=16");
+            Helper.loadJNIOpenCV();
+            checkAgainstReference();
+        }
+    }
+
+    /**
+     * The same single Gaussian per pixel, one pixel at a time with the same float operations.
+     */
+    private static final class Reference {
+        final float[][] mean = new float[ROWS][COLS];
+        final float[][] variance = new float[ROWS][COLS];
+        final int history = AnalysisParameters.DEFAULT.bgHistory();
+        final float varThreshold = (float) AnalysisParameters.DEFAULT.bgVarThreshold();
+        long framesSeen = 0;
+
+        int[][] apply(int[][] frame, double learningRate) {
+            int[][] mask = new int[ROWS][COLS];
+            framesSeen++;
+            if (framesSeen == 1) {
+                for (int y = 0; y < ROWS; y++) {
+                    for (int x = 0; x < COLS; x++) {
+                        mean[y][x] = frame[y][x];
+                        variance[y][x] = 15f;
+                    }
+                }
+                return mask;
+            }
+            float alpha = (float) (learningRate >= 0 ? learningRate : 1.0 / Math.min(2 * framesSeen, history));
+            for (int y = 0; y < ROWS; y++) {
+                for (int x = 0; x < COLS; x++) {
+                    float diff = frame[y][x] - mean[y][x];
+                    float distance = diff * diff;
+                    mask[y][x] = distance > varThreshold * variance[y][x] ? 255 : 0;
+                    mean[y][x] = mean[y][x] + alpha * diff;
+                    variance[y][x] = Math.clamp(variance[y][x] + alpha * (distance - variance[y][x]), 4f, 75f);
+                }
+            }
+            return mask;
+        }
+    }
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Helper.loadJNIOpenCV();
+    }
+
+    @Test
+    @DisplayName("Vector Model Matches a Scalar Reference on Padded Views")
+    void testMatchesReference() {
+        checkAgainstReference();
+    }
+
+    @Test
+    @DisplayName("Vector Model Matches the Reference With 128-bit Vectors")
+    void testMatchesReferenceNarrow() throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-agentlib:jdwp") && !option.startsWith("-XX:MaxVectorSize")) {
+                command.add(option);
+            }
+        }
+        command.addAll(List.of("-XX:MaxVectorSize=16", "-cp", System.getProperty("java.class.path"), Narrow.class.getName()));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "Child process should finish");
+        assertEquals(0, process.exitValue(), "The 128-bit run failed, see its output above");
+    }
+
+    static void checkAgainstReference() {
+        // Views into wider Mats, so rows are further apart than COLS bytes on both the frame and the mask
+        Mat frameParent = new Mat(ROWS, COLS + 2 * PADDING, CvType.CV_8UC1);
+        Mat maskParent = new Mat(ROWS, COLS + 2 * PADDING, CvType.CV_8UC1, new Scalar(7));
+        Mat frame = frameParent.submat(0, ROWS, PADDING, PADDING + COLS);
+        Mat mask = maskParent.submat(0, ROWS, PADDING, PADDING + COLS);
+        VectorBackgroundModel model = new VectorBackgroundModel(AnalysisParameters.DEFAULT);
+        Reference reference = new Reference();
+        Random random = new Random(42);
+        boolean tailMoved = false;
+
+        try {
+            for (int index = 0; index < 1 + MOVING_FRAMES + FROZEN_FRAMES; index++) {
+                // A learning rate of 0 for the last frames, with the block still moving
+                boolean frozen = index > MOVING_FRAMES;
+                double learningRate = frozen ? 0 : -1;
+                int[][] pixels = render(index, random);
+                frameParent.setTo(new Scalar(0));
+                for (int y = 0; y < ROWS; y++) {
+                    for (int x = 0; x < COLS; x++) {
+                        frame.put(y, x, pixels[y][x]);
+                    }
+                }
+
+                float[][] meanBefore = snapshot(model, true, index);
+                float[][] varianceBefore = snapshot(model, false, index);
+                model.apply(frame, mask, learningRate);
+                int[][] expected = reference.apply(pixels, learningRate);
+
+                assertEquals(maskParent.dataAddr() + PADDING, mask.dataAddr(), "The mask view should be written in place");
+                for (int y = 0; y < ROWS; y++) {
+                    for (int x = 0; x < COLS; x++) {
+                        assertEquals(expected[y][x], (int) mask.get(y, x)[0], "Mask at frame " + index + ", " + x + "," + y);
+                        assertEquals(reference.mean[y][x], model.meanAt(y, x), "Mean at frame " + index + ", " + x + "," + y);
+                        assertEquals(reference.variance[y][x], model.varianceAt(y, x), "Variance at frame " + index + ", " + x + "," + y);
+                        // 8 and 16 byte vectors both stop at column 32
+                        tailMoved |= expected[y][x] == 255 && x >= 32;
+                    }
+                    for (int x = 0; x < PADDING; x++) {
+                        assertEquals(7, (int) maskParent.get(y, x)[0], "Left of the mask view");
+                        assertEquals(7, (int) maskParent.get(y, PADDING + COLS + x)[0], "Right of the mask view");
+                    }
+                }
+                if (frozen) {
+                    assertEquals(meanBefore.length, ROWS);
+                    for (int y = 0; y < ROWS; y++) {
+                        for (int x = 0; x < COLS; x++) {
+                            assertEquals(meanBefore[y][x], model.meanAt(y, x), "A learning rate of 0 shouldn't move the mean");
+                            assertEquals(varianceBefore[y][x], model.varianceAt(y, x), "Nor the variance");
+                        }
+                    }
+                }
+            }
+            assertTrue(tailMoved, "The block should have been seen in the scalar tail");
+        } finally {
+            model.release();
+            frame.release();
+            mask.release();
+            frameParent.release();
+            maskParent.release();
+        }
+    }
+
+    /**
+     * A flat background with a little noise, and a bright block moving left to right from frame 1.
+     */
+    private static int[][] render(int index, Random random) {
+        int[][] pixels = new int[ROWS][COLS];
+        int left = (index - 1) * BLOCK_SPEED - BLOCK_WIDTH;
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLS; x++) {
+                boolean block = index > 0 && y >= 1 && y < ROWS - 1 && x >= left && x < left + BLOCK_WIDTH;
+                pixels[y][x] = block ? 200 + random.nextInt(20) : 100 + random.nextInt(5) - 2;
+            }
+        }
+        return pixels;
+    }
+
+    private static float[][] snapshot(VectorBackgroundModel model, boolean mean, int index) {
+        float[][] values = new float[ROWS][COLS];
+        if (index == 0) {
+            return values;
+        }
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLS; x++) {
+                values[y][x] = mean ? model.meanAt(y, x) : model.varianceAt(y, x);
+            }
+        }
+        return values;
+    }
+}
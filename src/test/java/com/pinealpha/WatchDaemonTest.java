@@ -0,0 +1,79 @@
+package com.pinealpha;
+
+import com.pinealpha.model.Config;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WatchDaemonTest {
+
+    private static final long SETTLE_NANOS = Config.WATCH_SETTLE_MILLIS * 1_000_000L;
+    private static final long RETRY_NANOS = Config.WATCH_RETRY_MILLIS * 1_000_000L;
+
+    @Test
+    @DisplayName("Clips Settle Once Their Size Stops Changing")
+    void testSettled() throws IOException {
+        Path dir = Files.createTempDirectory("speedcam-watch");
+        Path growing = Files.writeString(dir.resolve("Road Cam growing.mp4"), "part");
+        Path done = Files.writeString(dir.resolve("Road Cam done.mp4"), "whole clip");
+        Path empty = Files.createFile(dir.resolve("Road Cam empty.mp4"));
+        Path deleted = dir.resolve("Road Cam deleted.mp4");
+
+        Map<Path, WatchDaemon.Candidate> candidates = new HashMap<>();
+        for (Path path : List.of(growing, done, empty, deleted)) {
+            candidates.put(path, null);
+        }
+
+        // First look only records each file's size, a missing file is dropped
+        long now = 0;
+        assertTrue(WatchDaemon.settled(candidates, now).isEmpty());
+        assertEquals(3, candidates.size());
+
+        // The camera is still writing one clip
+        Files.writeString(growing, " more", StandardOpenOption.APPEND);
+        now += SETTLE_NANOS;
+        assertEquals(List.of(done), WatchDaemon.settled(candidates, now), "Only the unchanged clip should settle");
+        assertFalse(candidates.containsKey(done), "A settled clip leaves the candidates");
+
+        assertTrue(WatchDaemon.settled(candidates, now + SETTLE_NANOS - 1).isEmpty(), "The growing clip starts its wait over");
+        assertEquals(List.of(growing), WatchDaemon.settled(candidates, now + SETTLE_NANOS), "An empty file never settles");
+        assertEquals(List.of(empty), List.copyOf(candidates.keySet()));
+    }
+
+    @Test
+    @DisplayName("Failed Clips Are Retried With a Growing Wait, Then Given Up")
+    void testRetries() {
+        WatchDaemon.Retries retries = new WatchDaemon.Retries();
+        Path clip = Path.of("Road Cam failing.mp4");
+        Path other = Path.of("Road Cam recovers.mp4");
+
+        long now = 0;
+        for (int attempt = 1; attempt < Config.WATCH_MAX_ATTEMPTS; attempt++) {
+            assertTrue(retries.failed(clip, now), "Attempt " + attempt + " should be retried");
+            assertFalse(retries.givenUp(clip));
+            assertTrue(retries.due(now + attempt * RETRY_NANOS - 1).isEmpty(), "Too early for attempt " + (attempt + 1));
+            now += attempt * RETRY_NANOS;
+            assertEquals(List.of(clip), retries.due(now));
+            assertTrue(retries.due(now).isEmpty(), "A due clip is handed out once per failure");
+        }
+        assertFalse(retries.failed(clip, now), "The last attempt shouldn't be retried");
+        assertTrue(retries.givenUp(clip));
+        assertTrue(retries.due(Long.MAX_VALUE - 1).isEmpty());
+
+        assertTrue(retries.failed(other, now));
+        retries.succeeded(other);
+        assertFalse(retries.givenUp(other));
+        assertTrue(retries.due(now + RETRY_NANOS).isEmpty(), "A clip that succeeded isn't retried");
+    }
+}
@@ -0,0 +1,149 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.MotionResult;
+import com.pinealpha.model.VideoInfo;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncResultWriterTest {
+
+    private static final MotionResult RESULT =
+            new MotionResult(new VideoInfo(30.0, 3840, 2160, 300), ZonedDateTime.now(), 300, 61, 178, 400, false);
+
+    /**
+     * In-memory stand-in for the database: each connection's statements record the filename bound to every row and
+     * the size of every executed batch. The first failingBatches executeBatch calls throw.
+     */
+    private static final class FakeDatabase {
+        final List<String> rows = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger failingBatches;
+
+        FakeDatabase(int failingBatches) {
+            this.failingBatches = new AtomicInteger(failingBatches);
+        }
+
+        Connection open() {
+            connections.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, methodArgs) -> switch (method.getName()) {
+                        case "prepareStatement" -> statement();
+                        case "close" -> null;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        private PreparedStatement statement() {
+            List<String> pending = new ArrayList<>();
+            String[] filename = new String[1];
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, methodArgs) -> switch (method.getName()) {
+                        case "setString" -> {
+                            if ((int) methodArgs[0] == 2) {
+                                filename[0] = (String) methodArgs[1];
+                            }
+                            yield null;
+                        }
+                        case "addBatch" -> {
+                            pending.add(filename[0]);
+                            yield null;
+                        }
+                        case "executeBatch" -> {
+                            if (failingBatches.getAndDecrement() > 0) {
+                                throw new SQLException("connection reset");
+                            }
+                            rows.addAll(pending);
+                            batches.add(pending.size());
+                            yield new int[pending.size()];
+                        }
+                        case "close" -> null;
+                        default -> null; // the setters bindMotionResult calls
+                    });
+        }
+    }
+
+    @Test
+    @DisplayName("Queued Results Are Written on Close")
+    void testAsyncResultWriterDrainsOnClose() throws IOException, InterruptedException {
+        FakeDatabase db = new FakeDatabase(0);
+        // Batch size larger than the row count and a long flush interval, so only close() can get the rows written
+        AsyncResultWriter writer = new AsyncResultWriter(db::open, "motion_results_test", 4, 2, 100, 60_000);
+        for (int i = 0; i < 10; i++) {
+            writer.submit(RESULT, "clip-" + i);
+        }
+        writer.close();
+
+        assertEquals(10, writer.written());
+        assertEquals(0, writer.failed());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(db.rows.contains("clip-" + i), "clip-" + i + " should have been written");
+        }
+        assertTrue(db.connections.get() <= 2, "Each writer should keep at most one connection for the run");
+        assertThrows(IllegalStateException.class, () -> writer.submit(RESULT, "late"));
+    }
+
+    @Test
+    @DisplayName("A Failed Batch Is Retried Once on a New Connection")
+    void testBatchRetriedOnNewConnection() throws IOException, InterruptedException {
+        FakeDatabase flaky = new FakeDatabase(1);
+        AsyncResultWriter writer = new AsyncResultWriter(flaky::open, "motion_results_test", 4, 1, 100, 60_000);
+        writer.submit(RESULT, "clip");
+        writer.close();
+        assertEquals(1, writer.written());
+        assertEquals(0, writer.failed());
+        assertEquals(2, flaky.connections.get());
+
+        FakeDatabase down = new FakeDatabase(2);
+        writer = new AsyncResultWriter(down::open, "motion_results_test", 4, 1, 100, 60_000);
+        writer.submit(RESULT, "clip");
+        writer.close();
+        assertEquals(0, writer.written());
+        assertEquals(1, writer.failed());
+    }
+
+    @Test
+    @DisplayName("One Database Write Event per Batch")
+    void testOneEventPerBatch() throws InterruptedException, IOException {
+        FakeDatabase db = new FakeDatabase(0);
+        Path dump = Files.createTempFile("speedcam-db-writes", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.pinealpha.DatabaseWrite");
+            recording.start();
+            AsyncResultWriter writer = new AsyncResultWriter(db::open, "motion_results_test", 16, 1, 4, 60_000);
+            for (int i = 0; i < 10; i++) {
+                writer.submit(RESULT, "clip-" + i);
+            }
+            writer.close();
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        assertEquals(db.batches.size(), events.size(), "Expected one event per executed batch");
+        assertEquals(10, events.stream().mapToInt(event -> event.getInt("rows")).sum());
+        assertTrue(events.stream().allMatch(event -> event.getBoolean("succeeded")));
+        assertTrue(events.stream().allMatch(event -> event.getString("table").equals("motion_results_test")));
+    }
+}
@@ -0,0 +1,120 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.Args;
+import com.pinealpha.model.VideoInfo;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class DebugWriterTest {
+
+    private static final VideoInfo VIDEO = new VideoInfo(30.0, 320, 240, 40);
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Helper.loadJNIOpenCV();
+    }
+
+    @Test
+    @DisplayName("Frames Mode Writes a JPEG per Frame and Mask")
+    void testFramesOutput() throws IOException {
+        Path dir = Files.createTempDirectory("speedcam-debug-frames");
+        Args args = Helper.parse(new String[]{"--in", "clip.mp4", "--debug", "--debug-every", "4"});
+        DebugWriter writer = new DebugWriter("clip.mp4", VIDEO, args, dir);
+        assertTrue(writer.writesMasks());
+        writeFrames(writer);
+        writer.close();
+
+        // Frames 0, 4, ..., 36, each with its mask, and the sustained ones named as such
+        assertEquals(20, writer.written());
+        assertEquals(0, writer.failed());
+        List<String> names = list(dir);
+        assertEquals(20, names.size());
+        assertEquals(10, names.stream().filter(name -> name.startsWith("mask_")).count());
+        assertTrue(names.contains("frame_0.jpg"));
+        assertTrue(names.contains("frame_20_sustained.jpg"));
+    }
+
+    @Test
+    @DisplayName("Video Mode Writes One MP4 per Clip")
+    void testVideoOutput() throws IOException {
+        assumeTrue(canEncodeMp4(), "This OpenCV build has no mp4v encoder");
+        Path dir = Files.createTempDirectory("speedcam-debug-video");
+        Args args = Helper.parse(new String[]{"--in", "clip.mp4", "--debug", "--debug-every", "4", "--debug-output", "video"});
+        DebugWriter writer = new DebugWriter("clip.mp4", VIDEO, args, dir);
+        assertTrue(!writer.writesMasks(), "Video mode doesn't write masks");
+        writeFrames(writer);
+        writer.close();
+
+        assertEquals(0, writer.failed());
+        assertEquals(10, writer.written());
+        assertEquals(List.of("clip_debug.mp4"), list(dir));
+        assertTrue(Files.size(dir.resolve("clip_debug.mp4")) > 0);
+    }
+
+    @Test
+    @DisplayName("Failed Writes Are Counted and Don't Stall the Writer")
+    void testUnwritableOutput() throws IOException {
+        Path dir = Files.createTempDirectory("speedcam-debug-unwritable");
+        // A file where the output directory should be
+        Path notADirectory = Files.writeString(dir.resolve("target"), "not a directory");
+        Args args = Helper.parse(new String[]{"--in", "clip.mp4", "--debug", "--debug-every", "1"});
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            DebugWriter writer = new DebugWriter("clip.mp4", VIDEO, args, notADirectory);
+            // An empty Mat makes imwrite throw rather than return false
+            writer.write(0, false, new Mat(), new Mat());
+            // More than the queue holds, so a writer thread that died would block write
+            writeFrames(writer);
+            writer.close();
+
+            assertEquals(0, writer.written());
+            assertEquals(2L * VIDEO.totalFrames() + 2, writer.failed());
+        });
+        assertEquals(List.of("target"), list(dir));
+    }
+
+    private static void writeFrames(DebugWriter writer) {
+        for (int frame = 0; frame < VIDEO.totalFrames(); frame++) {
+            if (!writer.wants(frame)) {
+                continue;
+            }
+            Mat annotated = new Mat(VIDEO.frameHeight(), VIDEO.frameWidth(), CvType.CV_8UC3, new Scalar(frame, 100, 200));
+            Mat mask = new Mat(VIDEO.frameHeight(), VIDEO.frameWidth(), CvType.CV_8UC1, new Scalar(frame % 2 * 255));
+            writer.write(frame, frame >= 20, annotated, mask);
+        }
+    }
+
+    private static boolean canEncodeMp4() throws IOException {
+        Path probe = Files.createTempFile("speedcam-probe", ".mp4");
+        VideoWriter writer = new VideoWriter(probe.toString(), VideoWriter.fourcc('m', 'p', '4', 'v'), VIDEO.fps(),
+                new Size(VIDEO.frameWidth(), VIDEO.frameHeight()));
+        boolean opened = writer.isOpened();
+        writer.release();
+        Files.deleteIfExists(probe);
+        return opened;
+    }
+
+    private static List<String> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
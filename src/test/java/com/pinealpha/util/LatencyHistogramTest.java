@@ -0,0 +1,64 @@
+package com.pinealpha.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Every Value Lands in a Bucket Within 25% of It")
+    void testBucketBounds() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 20; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket >= previous, "Buckets should not go down at " + value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket), "Value above its bucket at " + value);
+            if (bucket > 0) {
+                assertTrue(value > LatencyHistogram.upperBoundOf(bucket - 1), "Value also fits the bucket below at " + value);
+            }
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) <= value + value / 4, "Bucket too wide at " + value);
+            previous = bucket;
+        }
+        assertEquals(247, LatencyHistogram.bucketOf(Long.MAX_VALUE), "Largest value should use the last of the 248 slots");
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(247));
+    }
+
+    @Test
+    @DisplayName("Percentiles Report the Bucket Bound, Capped at the Max")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileNanos(50), "Empty histogram should report 0");
+
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(500.5, histogram.meanNanos(), 1e-9);
+        assertEquals(1000, histogram.maxNanos());
+
+        long p50 = histogram.percentileNanos(50);
+        long p90 = histogram.percentileNanos(90);
+        assertTrue(p50 >= 500 && p50 <= 625, "p50 should be within 25% above 500, got " + p50);
+        assertTrue(p90 >= 900 && p90 <= 1000, "p90 should be within 25% above 900 and capped at the max, got " + p90);
+        assertEquals(1000, histogram.percentileNanos(100));
+        assertEquals(1, histogram.percentileNanos(0), "p0 should be the smallest value's bucket");
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.maxNanos());
+        assertEquals(0, histogram.percentileNanos(99));
+    }
+
+    @Test
+    @DisplayName("Negative Durations Record as Zero")
+    void testNegativeClampedToZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.percentileNanos(50));
+        assertEquals(0, histogram.meanNanos());
+    }
+}
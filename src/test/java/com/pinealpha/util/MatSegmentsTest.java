@@ -0,0 +1,88 @@
+package com.pinealpha.util;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MatSegmentsTest {
+
+    @BeforeAll
+    static void setup() throws IOException {
+        Helper.loadJNIOpenCV();
+    }
+
+    @Test
+    @DisplayName("Test Mat and MemorySegment Share Pixels")
+    void testMatSegmentsShareMemory() {
+        try (Arena arena = Arena.ofConfined()) {
+            Mat mat = MatSegments.allocate(arena, 4, 6, CvType.CV_8UC3);
+            mat.setTo(new Scalar(1, 2, 3));
+            MemorySegment pixels = MatSegments.of(mat);
+            assertEquals(4 * 6 * 3, pixels.byteSize());
+            assertEquals(3, pixels.get(ValueLayout.JAVA_BYTE, pixels.byteSize() - 1));
+
+            // A submat's segment starts at its first pixel and ends with its last row, written through to the parent
+            Mat view = mat.submat(new Rect(2, 1, 3, 2));
+            MemorySegment viewPixels = MatSegments.of(view);
+            assertEquals(MatSegments.rowStride(mat), MatSegments.rowStride(view));
+            assertEquals(MatSegments.rowStride(mat) + 3 * 3, viewPixels.byteSize());
+            viewPixels.set(ValueLayout.JAVA_BYTE, 0, (byte) 9);
+            assertEquals(9, mat.get(1, 2)[0]);
+            view.release();
+            mat.release();
+        }
+    }
+
+    @Test
+    @DisplayName("Wrap Follows a Padded Row Stride")
+    void testWrapPaddedStride() {
+        try (Arena arena = Arena.ofConfined()) {
+            // 5 pixels of 8UC1 per row, 8 bytes apart, and no padding needed after the last row
+            MemorySegment segment = arena.allocate(2 * 8 + 5);
+            for (int i = 0; i < segment.byteSize(); i++) {
+                segment.set(ValueLayout.JAVA_BYTE, i, (byte) i);
+            }
+            Mat mat = MatSegments.wrap(segment, 3, 5, CvType.CV_8UC1, 8);
+            assertEquals(8, MatSegments.rowStride(mat));
+            assertEquals(4, mat.get(0, 4)[0]);
+            assertEquals(8, mat.get(1, 0)[0]);
+            assertEquals(20, mat.get(2, 4)[0]);
+
+            mat.put(2, 0, 99);
+            assertEquals(99, segment.get(ValueLayout.JAVA_BYTE, 16));
+            assertEquals(segment.address(), MatSegments.of(mat).address());
+            assertEquals(segment.byteSize(), MatSegments.of(mat).byteSize());
+            mat.release();
+        }
+    }
+
+    @Test
+    @DisplayName("Wrap Rejects Heap and Undersized Segments")
+    void testWrapRejects() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MatSegments.wrap(MemorySegment.ofArray(new byte[4 * 6]), 4, 6, CvType.CV_8UC1), "Heap memory");
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(4 * 6 * 3 - 1);
+            assertThrows(IllegalArgumentException.class, () -> MatSegments.wrap(segment, 4, 6, CvType.CV_8UC3), "One byte short");
+            assertThrows(IllegalArgumentException.class,
+                    () -> MatSegments.wrap(arena.allocate(2 * 8 + 4), 3, 5, CvType.CV_8UC1, 8), "Last row one byte short");
+            assertThrows(IllegalArgumentException.class,
+                    () -> MatSegments.wrap(arena.allocate(64), 2, 5, CvType.CV_8UC3, 12), "Stride shorter than a row");
+            assertThrows(IllegalArgumentException.class,
+                    () -> MatSegments.wrap(arena.allocate(64), 0, 5, CvType.CV_8UC1), "No rows");
+        }
+    }
+}
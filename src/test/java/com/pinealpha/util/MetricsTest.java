@@ -0,0 +1,53 @@
+package com.pinealpha.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    @DisplayName("Overlapping Runs Share Numbers and Report Once")
+    void testOverlappingRuns() {
+        List<Metrics.Snapshot> finalReports = new ArrayList<>();
+        Metrics.Reporter reporter = (snapshot, finalReport) -> {
+            if (finalReport) {
+                finalReports.add(snapshot);
+            }
+        };
+        Metrics.addReporter(reporter);
+        try {
+            Metrics.start(0);
+            Metrics.countFrames(5);
+            Metrics.record(Metrics.Stage.DECODE, System.nanoTime());
+
+            // A second run starting mid-way must not wipe out the first one's numbers
+            Metrics.start(0);
+            Metrics.countFrames(3);
+            assertEquals(8, Metrics.snapshot().frames());
+
+            Metrics.finish();
+            assertTrue(finalReports.isEmpty(), "Summary should wait for the last run to finish");
+            Metrics.countFrames(2);
+
+            Metrics.finish();
+            assertEquals(1, finalReports.size());
+            assertEquals(10, finalReports.getFirst().frames());
+            assertEquals(1, finalReports.getFirst().stages().getFirst().count());
+
+            // Unmatched finish is ignored, the next run starts from zero
+            Metrics.finish();
+            assertEquals(1, finalReports.size());
+            Metrics.start(0);
+            assertEquals(0, Metrics.snapshot().frames());
+            Metrics.finish();
+        } finally {
+            Metrics.removeReporter(reporter);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.pinealpha.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NativeLoaderTest {
+
+    private static final NativeLoader.Platform LINUX = new NativeLoader.Platform(NativeLoader.Os.LINUX, "x86_64");
+    private static final NativeLoader.Platform MACOS = new NativeLoader.Platform(NativeLoader.Os.MACOS, "arm64");
+
+    private Path resources;
+
+    @BeforeEach
+    void setup() throws IOException {
+        resources = Files.createTempDirectory("speedcam-native");
+    }
+
+    @Test
+    @DisplayName("Platform Follows os.name and os.arch")
+    void testPlatform() throws IOException {
+        assertEquals(LINUX, NativeLoader.Platform.of("Linux", "amd64"));
+        assertEquals(new NativeLoader.Platform(NativeLoader.Os.LINUX, "arm64"), NativeLoader.Platform.of("Linux", "aarch64"));
+        assertEquals(MACOS, NativeLoader.Platform.of("Mac OS X", "aarch64"));
+        assertEquals(new NativeLoader.Platform(NativeLoader.Os.MACOS, "x86_64"), NativeLoader.Platform.of("Mac OS X", "x86_64"));
+        assertThrows(IOException.class, () -> NativeLoader.Platform.of("Windows 11", "amd64"));
+        assertThrows(IOException.class, () -> NativeLoader.Platform.of("Linux", "riscv64"));
+
+        assertEquals("linux-x86_64", LINUX.id());
+        assertEquals("libopencv_core.so.412", LINUX.module("core"));
+        assertEquals("libopencv_java4120.so", LINUX.jni());
+        assertEquals("libcvwrapper.so", LINUX.wrapper());
+        assertEquals("macos-arm64", MACOS.id());
+        assertEquals("libopencv_core.412.dylib", MACOS.module("core"));
+        assertEquals("libopencv_java4120.dylib", MACOS.jni());
+        assertEquals("libcvwrapper.dylib", MACOS.wrapper());
+    }
+
+    @Test
+    @DisplayName("Bundled Libraries Prefer the Platform Directory")
+    void testBundled() throws IOException {
+        write("native/libopencv_java4120.dylib", "mac jni");
+        write("native/libcvwrapper.dylib", "mac wrapper");
+        write("native/libcvwrapper.so", "generic linux wrapper");
+        write("native/linux-x86_64/libcvwrapper.so", "linux wrapper");
+        write("native/linux-x86_64/libopencv_core.so.412", "linux core");
+
+        try (URLClassLoader loader = loader()) {
+            Map<String, URL> linux = NativeLoader.bundled(LINUX, loader);
+            assertEquals(List.of("libopencv_core.so.412", "libcvwrapper.so"), List.copyOf(linux.keySet()));
+            assertEquals(url("native/linux-x86_64/libcvwrapper.so"), linux.get("libcvwrapper.so"));
+
+            Map<String, URL> mac = NativeLoader.bundled(MACOS, loader);
+            assertEquals(List.of("libopencv_java4120.dylib", "libcvwrapper.dylib"), List.copyOf(mac.keySet()));
+            assertEquals(url("native/libcvwrapper.dylib"), mac.get("libcvwrapper.dylib"));
+
+            // native/ is the arm64 build, an Intel Mac only gets its own directory
+            assertTrue(NativeLoader.bundled(new NativeLoader.Platform(NativeLoader.Os.MACOS, "x86_64"), loader).isEmpty());
+            write("native/macos-x86_64/libcvwrapper.dylib", "intel mac wrapper");
+            Map<String, URL> intel = NativeLoader.bundled(new NativeLoader.Platform(NativeLoader.Os.MACOS, "x86_64"), loader);
+            assertEquals(Map.of("libcvwrapper.dylib", url("native/macos-x86_64/libcvwrapper.dylib")), intel);
+        }
+    }
+
+    @Test
+    @DisplayName("Cache Key Changes Only With the Libraries")
+    void testChecksum() throws IOException {
+        write("native/linux-x86_64/libcvwrapper.so", "linux wrapper");
+        write("native/linux-x86_64/libopencv_java4120.so", "linux jni");
+
+        try (URLClassLoader loader = loader()) {
+            String checksum = NativeLoader.checksum(NativeLoader.bundled(LINUX, loader));
+            assertEquals(16, checksum.length());
+            assertEquals(checksum, NativeLoader.checksum(NativeLoader.bundled(LINUX, loader)), "Same build, same directory");
+
+            write("native/linux-x86_64/libcvwrapper.so", "rebuilt linux wrapper");
+            String rebuilt = NativeLoader.checksum(NativeLoader.bundled(LINUX, loader));
+            assertNotEquals(checksum, rebuilt, "A new build needs a new directory");
+
+            write("native/linux-x86_64/libopencv_core.so.412", "linux core");
+            assertNotEquals(rebuilt, NativeLoader.checksum(NativeLoader.bundled(LINUX, loader)), "So does another library");
+        }
+    }
+
+    private void write(String name, String content) throws IOException {
+        Path file = resources.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private URL url(String name) throws IOException {
+        return resources.resolve(name).toUri().toURL();
+    }
+
+    private URLClassLoader loader() throws IOException {
+        // No parent, so the project's own native/ resources stay out of it
+        return new URLClassLoader(new URL[]{resources.toUri().toURL()}, null);
+    }
+}
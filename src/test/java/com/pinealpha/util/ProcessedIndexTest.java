@@ -0,0 +1,175 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.MotionResult;
+import com.pinealpha.model.VideoInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProcessedIndexTest {
+
+    private static final MotionResult RESULT =
+            new MotionResult(new VideoInfo(30.0, 3840, 2160, 300), ZonedDateTime.parse("2025-06-07T14:05:46Z"), 300, 61, 178, 400, false);
+    private static final String FINGERPRINT = ProcessedIndex.fingerprint(Helper.parse(new String[]{"--in", "clips"}));
+
+    private Path dir;
+    private Path indexFile;
+    private Path first;
+    private Path second;
+
+    /**
+     * Holds every callback until makeDurable(), like a sink whose batch hasn't been committed yet.
+     */
+    private static final class DeferredSink implements ResultSink {
+        final List<Runnable> callbacks = new ArrayList<>();
+
+        @Override
+        public void submit(MotionResult result, String videoFilename, Runnable onDurable) {
+            callbacks.add(onDurable);
+        }
+
+        void makeDurable() {
+            callbacks.forEach(Runnable::run);
+            callbacks.clear();
+        }
+
+        @Override
+        public void close() {
+            makeDurable();
+        }
+    }
+
+    /**
+     * Child process for the crash test: submits one result through a ResultLog and halts, either before the log has
+     * synced it or after close.
+     */
+    public static final class Crash {
+        public static void main(String[] args) throws Exception {
+            ProcessedIndex index = new ProcessedIndex(Path.of(args[0]), FINGERPRINT, new ResultLog(Path.of(args[1])));
+            index.submit(RESULT, args[2]);
+            if (args[3].equals("close")) {
+                index.close();
+            }
+            Runtime.getRuntime().halt(0);
+        }
+    }
+
+    @BeforeEach
+    void setup() throws IOException {
+        dir = Files.createTempDirectory("speedcam-index");
+        indexFile = dir.resolve("processed-index.tsv");
+        first = Files.writeString(dir.resolve("first.mp4"), "first clip");
+        second = Files.writeString(dir.resolve("second.mp4"), "second clip");
+    }
+
+    @Test
+    @DisplayName("Videos Are Marked Done Only Once Their Result Is Durable")
+    void testMarkedDoneOnDurable() throws IOException, InterruptedException {
+        DeferredSink sink = new DeferredSink();
+        try (ProcessedIndex index = new ProcessedIndex(indexFile, FINGERPRINT, sink)) {
+            index.submit(RESULT, first.toString());
+            assertEquals(RESULT, index.lookup(first.toString()), "A result on its way still counts within the run");
+            assertNull(lookup(FINGERPRINT, first), "Nothing should be on disk before the sink is durable");
+
+            sink.makeDurable();
+            assertEquals(RESULT, lookup(FINGERPRINT, first));
+        }
+    }
+
+    @Test
+    @DisplayName("A Crash Between Submit and Sync Leaves the Video Undone")
+    void testCrashBeforeSync() throws IOException, InterruptedException {
+        runCrash(first, "halt");
+        assertNull(lookup(FINGERPRINT, first), "Halted before the result log synced");
+
+        runCrash(second, "close");
+        assertEquals(RESULT, lookup(FINGERPRINT, second), "Closed, so synced, before the halt");
+    }
+
+    @Test
+    @DisplayName("Load Skips Torn Lines, Other Parameters and Changed Clips")
+    void testLoad() throws IOException, InterruptedException {
+        try (ProcessedIndex index = new ProcessedIndex(indexFile, FINGERPRINT, new DeferredSink())) {
+            index.submit(RESULT, first.toString());
+            index.submit(RESULT, second.toString());
+        }
+
+        // Cut the second line short, as a crash in the middle of the write would
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 20);
+        }
+        try (ProcessedIndex index = new ProcessedIndex(indexFile, FINGERPRINT, new DeferredSink())) {
+            assertEquals(RESULT, index.lookup(first.toString()));
+            assertNull(index.lookup(second.toString()), "A torn line shouldn't count");
+            assertEquals(1, index.size());
+
+            // The next line must not be glued onto the torn one
+            index.submit(RESULT, second.toString());
+        }
+        assertEquals(RESULT, lookup(FINGERPRINT, second));
+        assertEquals(3, Files.readAllLines(indexFile, StandardCharsets.UTF_8).size());
+
+        assertNull(lookup("other parameters", first), "Lines from other parameters shouldn't count");
+
+        Files.setLastModifiedTime(first, FileTime.fromMillis(Files.getLastModifiedTime(first).toMillis() + 60_000));
+        assertNull(lookup(FINGERPRINT, first), "A clip modified since should be processed again");
+    }
+
+    @Test
+    @DisplayName("Fingerprint Follows the Options That Change Results")
+    void testFingerprint() {
+        assertEquals(FINGERPRINT, fingerprint("--in", "clips"));
+        assertEquals(FINGERPRINT, fingerprint("--in", "other", "--debug", "--workers", "4", "--pipeline"));
+        assertNotEquals(FINGERPRINT, fingerprint("--in", "clips", "--scale", "0.5"));
+        assertNotEquals(FINGERPRINT, fingerprint("--in", "clips", "--roi-crop"));
+        assertNotEquals(FINGERPRINT, fingerprint("--in", "clips", "--stride", "4"));
+        assertNotEquals(FINGERPRINT, fingerprint("--in", "clips", "--track"));
+        assertNotEquals(fingerprint("--in", "clips", "--bg", "vector"), fingerprint("--in", "clips", "--gray"));
+    }
+
+    /**
+     * What a fresh run with this fingerprint would find for the video.
+     */
+    private MotionResult lookup(String fingerprint, Path video) throws IOException, InterruptedException {
+        try (ProcessedIndex index = new ProcessedIndex(indexFile, fingerprint, new DeferredSink())) {
+            return index.lookup(video.toString());
+        }
+    }
+
+    private static String fingerprint(String... args) {
+        return ProcessedIndex.fingerprint(Helper.parse(args));
+    }
+
+    private void runCrash(Path video, String mode) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-agentlib:jdwp")) {
+                command.add(option);
+            }
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), Crash.class.getName(),
+                indexFile.toString(), dir.resolve("results-log").toString(), video.toString(), mode));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "Child process should halt");
+        assertEquals(0, process.exitValue());
+    }
+}
@@ -0,0 +1,74 @@
+package com.pinealpha.util;
+
+import com.pinealpha.model.Config;
+import com.pinealpha.model.MotionResult;
+import com.pinealpha.model.VideoInfo;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResultLogTest {
+
+    private static final VideoInfo VIDEO = new VideoInfo(30.0, 3840, 2160, 300);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Test Result Log Round Trip")
+    void testResultLogSurvivesTornTail() throws IOException, InterruptedException {
+        MotionResult first = new MotionResult(VIDEO, ZonedDateTime.now(), 300, 61, 178, 400, false);
+        MotionResult second = new MotionResult(VIDEO, ZonedDateTime.now(), 80, -1, -1, -1, true);
+
+        try (ResultLog log = new ResultLog(dir)) {
+            log.submit(first, "first.mp4");
+            log.submit(second, "second.mp4");
+        }
+
+        // Cut the last record short, as a crash in the middle of a write would
+        Path segment = ResultLog.segments(dir).getFirst();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        List<ResultLog.Entry> entries = new ArrayList<>();
+        long position = ResultLog.read(segment, 0, 10, entries);
+
+        assertEquals(1, entries.size(), "Only the complete record should be read back");
+        assertEquals(first, entries.getFirst().result());
+        assertEquals("first.mp4", entries.getFirst().videoFilename());
+        assertTrue(position < Files.size(segment));
+    }
+
+    @Test
+    @DisplayName("A Lone Result Becomes Durable Without Another Submit")
+    void testSyncedAfterSyncMillis() throws IOException, InterruptedException {
+        MotionResult result = new MotionResult(VIDEO, ZonedDateTime.now(), 300, 61, 178, 400, false);
+        CountDownLatch durable = new CountDownLatch(1);
+
+        try (ResultLog log = new ResultLog(dir)) {
+            long start = System.nanoTime();
+            log.submit(result, "lone.mp4", durable::countDown);
+            assertFalse(durable.await(Config.RESULT_LOG_SYNC_MILLIS / 2, TimeUnit.MILLISECONDS),
+                    "One result is below RESULT_LOG_SYNC_RECORDS, it should wait for the time limit");
+            assertTrue(durable.await(Config.RESULT_LOG_SYNC_MILLIS * 5L, TimeUnit.MILLISECONDS),
+                    "The time limit should sync it with no further submit or close");
+            assertTrue(System.nanoTime() - start >= Config.RESULT_LOG_SYNC_MILLIS * 1_000_000L);
+        }
+    }
+}